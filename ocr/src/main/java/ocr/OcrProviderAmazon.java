@@ -1,8 +1,8 @@
 package ocr;
 
 import java.io.ByteArrayInputStream;
-import java.io.IOException;
 import java.net.URI;
+import shared.ClientRegistry;
 import shared.Configuration;
 import shared.Credentials;
 import shared.Provider;
@@ -20,14 +20,12 @@ public class OcrProviderAmazon implements OcrProvider {
     private final Storage storage;
     private final Runtime runtime;
     private final Configuration configuration;
-    private String serviceRegion;
+    // the region configured by the caller, null if the region is selected per request
+    private final String serviceRegion;
 
     public OcrProviderAmazon(
             Credentials credentials, Runtime runtime, Storage storage, Configuration configuration) {
-        this.credentials = credentials;
-        this.storage = storage;
-        this.runtime = runtime;
-        this.configuration = configuration;
+        this(credentials, runtime, storage, configuration, null);
     }
 
   public OcrProviderAmazon(
@@ -36,7 +34,10 @@ public class OcrProviderAmazon implements OcrProvider {
       Storage storage,
       Configuration configuration,
       String serviceRegion) {
-    this(credentials, runtime, storage, configuration);
+    this.credentials = credentials;
+    this.storage = storage;
+    this.runtime = runtime;
+    this.configuration = configuration;
     this.serviceRegion = serviceRegion;
   }
 
@@ -46,22 +47,22 @@ public class OcrProviderAmazon implements OcrProvider {
     String automatedServiceRegion;
         Document doc;
         if (!inputFileInfo.isLocal() && Provider.AWS.equals(inputFileInfo.getBucketInfo().getProvider())) {
-      automatedServiceRegion = storage.getRegion(inputFileInfo.getBucketInfo().getBucketUrl());
+      automatedServiceRegion = storage.getRegion(inputFileInfo.getBucketInfo());
             S3Object s3Object = S3Object.builder().bucket(inputFileInfo.getBucketInfo().getBucketName()).name(inputFileInfo.getFileName()).build();
             doc = Document.builder().s3Object(s3Object).build();
         }else{
       automatedServiceRegion = selectRegion();
-            byte[] data = storage.read(inputFile);
+            byte[] data = storage.read(inputFileInfo);
             ByteArrayInputStream sourceStream = new ByteArrayInputStream(data);
             SdkBytes sourceBytes = SdkBytes.fromInputStream(sourceStream);
             doc = Document.builder().bytes(sourceBytes).build();
         }
     // invoke service
-    serviceRegion =
+    String region =
         (serviceRegion != null && !serviceRegion.isEmpty())
             ? serviceRegion
             : automatedServiceRegion;
-        TextractClient textractClient = getTextractClient(serviceRegion);
+        TextractClient textractClient = getTextractClient(region);
         DetectDocumentTextRequest detectDocumentTextRequest =
                 DetectDocumentTextRequest.builder().document(doc).build();
         DetectDocumentTextResponse response = textractClient.detectDocumentText(detectDocumentTextRequest);
@@ -91,12 +92,17 @@ public class OcrProviderAmazon implements OcrProvider {
     /**
      * Create amazon textract client Java SDK V2
      */
-    private TextractClient getTextractClient(String region) throws IOException {
-        return TextractClient.builder()
-                .region(Region.of(region))
-                .endpointOverride(URI.create("https://textract." + region + ".amazonaws.com/"))
-                .credentialsProvider(credentials.getAwsCredentials())
-                .build();
+    private TextractClient getTextractClient(String region) {
+        return ClientRegistry.getInstance().getClient(
+                TextractClient.class,
+                Provider.AWS,
+                region,
+                credentials.getAwsCredentials(),
+                () -> TextractClient.builder()
+                        .region(Region.of(region))
+                        .endpointOverride(URI.create("https://textract." + region + ".amazonaws.com/"))
+                        .credentialsProvider(credentials.getAwsCredentials())
+                        .build());
     }
 
 }
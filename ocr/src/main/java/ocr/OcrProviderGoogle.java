@@ -55,7 +55,7 @@ public class OcrProviderGoogle implements OcrProvider {
       inputConfig =
           InputConfig.newBuilder().setMimeType("application/pdf").setGcsSource(gcsSource).build();
     } else {
-      byte[] data = storage.read(inputFile);
+      byte[] data = storage.read(inputFileInfo);
       ByteString content = ByteString.copyFrom(data);
       inputConfig =
           InputConfig.newBuilder().setMimeType("application/pdf").setContent(content).build();
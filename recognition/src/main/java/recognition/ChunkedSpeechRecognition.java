@@ -0,0 +1,202 @@
+package recognition;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import shared.Configuration;
+import shared.Provider;
+import storage.FileInfo;
+import storage.Storage;
+
+/**
+ * Transcribes long audio by splitting it into chunks at silences, transcribing the chunks
+ * concurrently and stitching the results. The chunks are distributed round-robin over the given
+ * providers. Subtitles are not supported, as they would have to be stitched as well.
+ */
+public class ChunkedSpeechRecognition implements SpeechRecognition {
+
+  private final List<SpeechRecognition> recognizers;
+  private final Storage storage;
+  private final Configuration configuration;
+
+  public ChunkedSpeechRecognition(
+      List<SpeechRecognition> recognizers, Storage storage, Configuration configuration) {
+    if (recognizers.isEmpty()) {
+      throw new IllegalArgumentException("At least one provider is required.");
+    }
+    this.recognizers = recognizers;
+    this.storage = storage;
+    this.configuration = configuration;
+  }
+
+  @Override
+  public SpeechRecognitionResponse recognizeSpeech(
+      String inputFile,
+      int sampleRate,
+      String languageCode,
+      int channelCount,
+      boolean srtSubtitles,
+      boolean vttSubtitles,
+      boolean profanityFilter,
+      boolean spokenEmoji,
+      boolean spokenPunctuation,
+      boolean includeSNR)
+      throws Exception {
+    FileInfo inputFileInfo = FileInfo.parse(inputFile);
+    Path workDirectory = createWorkDirectory();
+    ExecutorService executor = null;
+    try {
+      long start = System.currentTimeMillis();
+      // the audio has to be split locally
+      Path localFile;
+      if (inputFileInfo.isLocal()) {
+        localFile = Paths.get(inputFileInfo.getFileUrl());
+      } else {
+        String name = inputFileInfo.getFileName();
+        localFile = workDirectory.resolve("input-" + name.substring(name.lastIndexOf('/') + 1));
+        storage.download(inputFileInfo, localFile);
+      }
+      Path wavFile = localFile;
+      if (!localFile.toString().endsWith(".wav")) {
+        wavFile =
+            Paths.get(
+                SpeechRecognitionMicrosoft.convertAudioToWav(
+                    localFile.toString(), sampleRate, channelCount));
+      }
+      List<WavChunker.Chunk> chunks;
+      try {
+        double chunkSeconds =
+            configuration.getChunkedRecognitionChunkDuration().toMillis() / 1000.0;
+        chunks = WavChunker.split(wavFile, chunkSeconds, workDirectory);
+      } finally {
+        if (!wavFile.equals(localFile)) {
+          Files.deleteIfExists(wavFile);
+        }
+      }
+      // transcribe the chunks
+      int concurrency = Math.min(configuration.getChunkedRecognitionConcurrency(), chunks.size());
+      executor = Executors.newFixedThreadPool(Math.max(1, concurrency));
+      List<Future<SpeechRecognitionResponse>> futures = new ArrayList<>();
+      for (int i = 0; i < chunks.size(); i++) {
+        SpeechRecognition recognizer = recognizers.get(i % recognizers.size());
+        String chunkFile = chunks.get(i).getFile().toString();
+        futures.add(
+            executor.submit(
+                () ->
+                    recognizer.recognizeSpeech(
+                        chunkFile,
+                        sampleRate,
+                        languageCode,
+                        channelCount,
+                        false,
+                        false,
+                        profanityFilter,
+                        spokenEmoji,
+                        spokenPunctuation,
+                        includeSNR)));
+      }
+      List<SpeechRecognitionResponse> responses = new ArrayList<>();
+      for (Future<SpeechRecognitionResponse> future : futures) {
+        try {
+          responses.add(future.get());
+        } catch (ExecutionException e) {
+          throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+      }
+      long end = System.currentTimeMillis();
+      SpeechRecognitionResponse response = stitch(chunks, responses);
+      response.setRecognitionTime(end - start);
+      return response;
+    } finally {
+      if (executor != null) {
+        // stops the remaining chunks if one of them failed
+        executor.shutdownNow();
+      }
+      deleteRecursively(workDirectory);
+    }
+  }
+
+  /**
+   * Merge the responses of the chunks into one. Word times are in seconds for every provider and
+   * are shifted by the offset of their chunk, so they are the seconds from the start of the whole
+   * recording.
+   */
+  private SpeechRecognitionResponse stitch(
+      List<WavChunker.Chunk> chunks, List<SpeechRecognitionResponse> responses) {
+    StringBuilder fullTranscript = new StringBuilder();
+    List<Word> words = new ArrayList<>();
+    Provider provider = null;
+    boolean sameProvider = true;
+    double snrSum = 0;
+    int snrCount = 0;
+    for (int i = 0; i < responses.size(); i++) {
+      SpeechRecognitionResponse response = responses.get(i);
+      if (response == null) {
+        // nothing was recognized in the chunk
+        continue;
+      }
+      if (provider == null) {
+        provider = response.getProvider();
+      } else if (!provider.equals(response.getProvider())) {
+        sameProvider = false;
+      }
+      double offset = chunks.get(i).getOffsetSeconds();
+      if (response.getFullTranscript() != null && !response.getFullTranscript().isBlank()) {
+        if (fullTranscript.length() > 0) {
+          fullTranscript.append(' ');
+        }
+        fullTranscript.append(response.getFullTranscript().trim());
+      }
+      if (response.getWords() != null) {
+        for (Word word : response.getWords()) {
+          words.add(
+              Word.builder()
+                  .startTime(shift(word.getStartTime(), offset))
+                  .endTime(shift(word.getEndTime(), offset))
+                  .confidence(word.getConfidence())
+                  .content(word.getContent())
+                  .build());
+        }
+      }
+      if (response.getSignalToNoiseRatio() != null) {
+        snrSum += response.getSignalToNoiseRatio();
+        snrCount++;
+      }
+    }
+    return SpeechRecognitionResponse.builder()
+        .provider(sameProvider ? provider : null)
+        .fullTranscript(fullTranscript.toString())
+        .words(words)
+        .signalToNoiseRatio(snrCount > 0 ? (float) (snrSum / snrCount) : null)
+        .build();
+  }
+
+  private static Double shift(Double time, double offsetSeconds) {
+    // punctuation has no times
+    return time != null ? time + offsetSeconds : null;
+  }
+
+  private static Path createWorkDirectory() throws IOException {
+    String tempDirectory = System.getenv(SpeechRecognitionMicrosoft.ENV_TEMP_FILE_DIR);
+    return tempDirectory != null
+        ? Files.createTempDirectory(Paths.get(tempDirectory), "core-chunks-")
+        : Files.createTempDirectory("core-chunks-");
+  }
+
+  private static void deleteRecursively(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+}
@@ -8,10 +8,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import lombok.Getter;
 import lombok.ToString;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import shared.ClientRegistry;
 import shared.Configuration;
 import shared.Credentials;
 import shared.Provider;
@@ -19,7 +22,6 @@ import shared.Runtime;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.transcribe.TranscribeClient;
 import software.amazon.awssdk.services.transcribe.model.*;
-import storage.BucketInfo;
 import storage.FileInfo;
 import storage.Storage;
 
@@ -30,15 +32,12 @@ public class SpeechRecognitionAmazon implements SpeechRecognition {
   private final Storage storage;
   private final Runtime runtime;
   private final Configuration configuration;
-  private BucketInfo tmpInputBucket;
-  @Getter private String serviceRegion;
+  // the region configured by the caller, null if the region is selected per request
+  @Getter private final String serviceRegion;
 
   public SpeechRecognitionAmazon(
       Credentials credentials, Runtime runtime, Storage storage, Configuration configuration) {
-    this.credentials = credentials;
-    this.storage = storage;
-    this.runtime = runtime;
-    this.configuration = configuration;
+    this(credentials, runtime, storage, configuration, null);
   }
 
   public SpeechRecognitionAmazon(
@@ -47,7 +46,10 @@ public class SpeechRecognitionAmazon implements SpeechRecognition {
       Storage storage,
       Configuration configuration,
       String serviceRegion) {
-    this(credentials, runtime, storage, configuration);
+    this.credentials = credentials;
+    this.storage = storage;
+    this.runtime = runtime;
+    this.configuration = configuration;
     this.serviceRegion = serviceRegion;
   }
 
@@ -64,17 +66,19 @@ public class SpeechRecognitionAmazon implements SpeechRecognition {
       boolean spokenPunctuation,
       boolean includeSNR)
       throws Exception {
+    // all per-request state is kept in local variables, so the instance can be shared by threads
+    FileInfo stagedInputFile = null;
     try {
       // parse input file url
       FileInfo inputFileInfo = FileInfo.parse(inputFile);
       // select region where to run the service
-      if (serviceRegion == null) {
-        serviceRegion = selectRegion(inputFileInfo);
-      }
-      // copy the input file to temporary S3 bucket if necessary
+      String region = serviceRegion != null ? serviceRegion : selectRegion(inputFileInfo);
+      // copy the input file to the staging bucket of the region if necessary
       if (inputFileInfo.isLocal()
           || !inputFileInfo.getBucketInfo().getProvider().equals(Provider.AWS)) {
-        inputFileInfo = uploadInputToTmpS3Bucket(inputFileInfo);
+        stagedInputFile =
+            StagingBuckets.getInstance().stage(storage, credentials, region, inputFileInfo);
+        inputFileInfo = stagedInputFile;
       }
       // invoke the service
       String jobName = UUID.randomUUID().toString();
@@ -86,7 +90,7 @@ public class SpeechRecognitionAmazon implements SpeechRecognition {
               languageCode,
               getSubtitleFormats(srtSubtitles, vttSubtitles));
       long start = System.currentTimeMillis();
-      TranscribeClient transcribeClient = getTranscribeClient();
+      TranscribeClient transcribeClient = getTranscribeClient(region);
       transcribeClient.startTranscriptionJob(startTranscriptionJobRequest);
       // wait for the service to finish
       TranscriptionJob transcriptionJob = awaitTermination(jobName, transcribeClient);
@@ -108,13 +112,10 @@ public class SpeechRecognitionAmazon implements SpeechRecognition {
           parseResponse(transcriptJsonString, srtSubtitlesString, vttSubtitlesString);
       response.setProvider(Provider.AWS);
       response.setRecognitionTime(end - start);
-      transcribeClient.close();
       return response;
     } finally {
-      if (tmpInputBucket != null) {
-        storage.deleteBucket(Provider.AWS, tmpInputBucket.getBucketName(), serviceRegion);
-        serviceRegion = null;
-        tmpInputBucket = null;
+      if (stagedInputFile != null) {
+        StagingBuckets.getInstance().release(storage, stagedInputFile);
       }
     }
   }
@@ -140,19 +141,17 @@ public class SpeechRecognitionAmazon implements SpeechRecognition {
     return builder.build();
   }
 
-  private TranscriptionJob awaitTermination(String jobName, TranscribeClient transcribeClient) {
-    while (true) {
-      GetTranscriptionJobRequest getTranscriptionJobRequest =
-          GetTranscriptionJobRequest.builder().transcriptionJobName(jobName).build();
-      GetTranscriptionJobResponse transcriptionJobResponse =
-          transcribeClient.getTranscriptionJob(getTranscriptionJobRequest);
-      TranscriptionJobStatus status =
-          transcriptionJobResponse.transcriptionJob().transcriptionJobStatus();
-      if (status.equals(TranscriptionJobStatus.COMPLETED)) {
-        return transcriptionJobResponse.transcriptionJob();
-      } else if (status.equals(TranscriptionJobStatus.FAILED)) {
-        throw new RuntimeException("Transcription failed.");
-      }
+  private TranscriptionJob awaitTermination(String jobName, TranscribeClient transcribeClient)
+      throws Exception {
+    CompletableFuture<TranscriptionJob> termination =
+        TranscriptionJobPoller.getInstance().await(transcribeClient, jobName);
+    try {
+      return termination.get();
+    } catch (InterruptedException e) {
+      termination.cancel(false);
+      throw e;
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
     }
   }
 
@@ -209,23 +208,6 @@ public class SpeechRecognitionAmazon implements SpeechRecognition {
         .build();
   }
 
-  private FileInfo uploadInputToTmpS3Bucket(FileInfo inputFileInfo) throws Exception {
-    tmpInputBucket = createTmpS3Bucket();
-    String tmpFileName = UUID.randomUUID().toString();
-    String tmpFileUrl = tmpInputBucket.getBucketUrl() + tmpFileName;
-    byte[] data = storage.read(inputFileInfo.getFileUrl());
-    storage.write(data, tmpFileUrl);
-    return FileInfo.parse(tmpFileUrl);
-  }
-
-  private BucketInfo createTmpS3Bucket() throws Exception {
-    String tmpOutputBucketName = UUID.randomUUID().toString();
-    storage.createBucket(Provider.AWS, tmpOutputBucketName, serviceRegion);
-    String tmpOutputBucketUrl =
-        "https://" + tmpOutputBucketName + ".s3." + serviceRegion + ".amazonaws.com/";
-    return BucketInfo.parse(tmpOutputBucketUrl);
-  }
-
   private Collection<SubtitleFormat> getSubtitleFormats(
       boolean srtSubtitles, boolean vttSubtitles) {
     Collection<SubtitleFormat> subtitleFormats = new ArrayList<>();
@@ -242,7 +224,7 @@ public class SpeechRecognitionAmazon implements SpeechRecognition {
     if (!inputFileInfo.isLocal()
         && inputFileInfo.getBucketInfo().getProvider().equals(Provider.AWS)) {
       // run in bucket region
-      return storage.getRegion(inputFileInfo.getBucketInfo().getBucketUrl());
+      return storage.getRegion(inputFileInfo.getBucketInfo());
     } else if (Provider.AWS.equals(runtime.getFunctionProvider())) {
       // run in function region
       return runtime.getFunctionRegion();
@@ -251,11 +233,19 @@ public class SpeechRecognitionAmazon implements SpeechRecognition {
     return configuration.getDefaultRegionAws();
   }
 
-  private TranscribeClient getTranscribeClient() {
-    return TranscribeClient.builder()
-        .region(Region.of(serviceRegion))
-        .endpointOverride(URI.create("https://transcribe." + serviceRegion + ".amazonaws.com/"))
-        .credentialsProvider(credentials.getAwsCredentials())
-        .build();
+  private TranscribeClient getTranscribeClient(String region) {
+    return ClientRegistry.getInstance()
+        .getClient(
+            TranscribeClient.class,
+            Provider.AWS,
+            region,
+            credentials.getAwsCredentials(),
+            () ->
+                TranscribeClient.builder()
+                    .region(Region.of(region))
+                    .endpointOverride(
+                        URI.create("https://transcribe." + region + ".amazonaws.com/"))
+                    .credentialsProvider(credentials.getAwsCredentials())
+                    .build());
   }
 }
@@ -1,12 +1,54 @@
 package recognition;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import shared.Configuration;
 import shared.Credentials;
 import shared.Provider;
 import shared.Runtime;
 
+/**
+ * Runs the service on Google, AWS and Azure in parallel. The Google result is the primary result,
+ * AWS adds the SRT and VTT subtitles and Azure the signal-to-noise ratio. AWS and Azure are only
+ * invoked if their features are requested.
+ *
+ * <p>Provider calls run on a bounded pool without a queue, so a call either starts right away or
+ * the request fails fast with a {@link RejectedExecutionException} when all threads are busy. The
+ * {@link Configuration#getCombinedRecognitionTimeout()} of each provider starts when its call
+ * starts. Calls that miss the deadline are stopped, including the remote jobs of AWS and Google.
+ */
 public class SpeechRecognitionCombined implements SpeechRecognition {
 
+  // up to three provider calls per request, idle threads exit after a minute
+  private static final int MAX_THREADS = 48;
+  private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+  private static final ExecutorService EXECUTOR =
+      new ThreadPoolExecutor(
+          0,
+          MAX_THREADS,
+          1,
+          TimeUnit.MINUTES,
+          new SynchronousQueue<>(),
+          runnable -> {
+            Thread thread =
+                new Thread(
+                    runnable, "core-recognition-combined-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          },
+          (runnable, executor) -> {
+            throw new RejectedExecutionException(
+                "Too many combined speech recognitions are running, try again later.");
+          });
+
   private final Credentials credentials;
   private final Runtime runtime;
   private final Configuration configuration;
@@ -36,46 +78,156 @@ public class SpeechRecognitionCombined implements SpeechRecognition {
     SpeechRecognition amazonSpeechRecognition = factory.getS2TProvider(Provider.AWS);
     SpeechRecognition googleSpeechRecognition = factory.getS2TProvider(Provider.GCP);
     SpeechRecognition microsoftSpeechRecognition = factory.getS2TProvider(Provider.AZURE);
-    SpeechRecognitionResponse amazonResult =
-        amazonSpeechRecognition.recognizeSpeech(
-            inputFile,
-            sampleRate,
-            languageCode,
-            channelCount,
-            srtSubtitles,
-            vttSubtitles,
-            profanityFilter,
-            spokenEmoji,
-            spokenPunctuation,
-            includeSNR);
-    SpeechRecognitionResponse googleResult =
-        googleSpeechRecognition.recognizeSpeech(
-            inputFile,
-            sampleRate,
-            languageCode,
-            channelCount,
-            srtSubtitles,
-            vttSubtitles,
-            profanityFilter,
-            spokenEmoji,
-            spokenPunctuation,
-            includeSNR);
-    SpeechRecognitionResponse microsoftResult =
-        microsoftSpeechRecognition.recognizeSpeech(
-            inputFile,
-            sampleRate,
-            languageCode,
-            channelCount,
-            srtSubtitles,
-            vttSubtitles,
-            profanityFilter,
-            spokenEmoji,
-            spokenPunctuation,
-            includeSNR);
+    ProviderCall googleCall = null;
+    ProviderCall amazonCall = null;
+    ProviderCall microsoftCall = null;
+    try {
+      // start all providers at once
+      googleCall =
+          submit(
+              googleSpeechRecognition,
+              inputFile,
+              sampleRate,
+              languageCode,
+              channelCount,
+              srtSubtitles,
+              vttSubtitles,
+              profanityFilter,
+              spokenEmoji,
+              spokenPunctuation,
+              includeSNR);
+      amazonCall =
+          srtSubtitles || vttSubtitles
+              ? submit(
+                  amazonSpeechRecognition,
+                  inputFile,
+                  sampleRate,
+                  languageCode,
+                  channelCount,
+                  srtSubtitles,
+                  vttSubtitles,
+                  profanityFilter,
+                  spokenEmoji,
+                  spokenPunctuation,
+                  includeSNR)
+              : null;
+      microsoftCall =
+          includeSNR
+              ? submit(
+                  microsoftSpeechRecognition,
+                  inputFile,
+                  sampleRate,
+                  languageCode,
+                  channelCount,
+                  srtSubtitles,
+                  vttSubtitles,
+                  profanityFilter,
+                  spokenEmoji,
+                  spokenPunctuation,
+                  includeSNR)
+              : null;
+      // merge the results, the deadline of each provider starts with its call
+      SpeechRecognitionResponse response = await(googleCall, false);
+      SpeechRecognitionResponse amazonResponse = await(amazonCall, true);
+      if (amazonResponse != null) {
+        response.setSrtSubtitles(amazonResponse.getSrtSubtitles());
+        response.setVttSubtitles(amazonResponse.getVttSubtitles());
+      }
+      SpeechRecognitionResponse microsoftResponse = await(microsoftCall, true);
+      if (microsoftResponse != null) {
+        response.setSignalToNoiseRatio(microsoftResponse.getSignalToNoiseRatio());
+      }
+      return response;
+    } finally {
+      // stop providers that are still running after a failure, timeout or rejection
+      cancel(googleCall);
+      cancel(amazonCall);
+      cancel(microsoftCall);
+    }
+  }
+
+  private ProviderCall submit(
+      SpeechRecognition speechRecognition,
+      String inputFile,
+      int sampleRate,
+      String languageCode,
+      int channelCount,
+      boolean srtSubtitles,
+      boolean vttSubtitles,
+      boolean profanityFilter,
+      boolean spokenEmoji,
+      boolean spokenPunctuation,
+      boolean includeSNR) {
+    ProviderCall call = new ProviderCall();
+    CompletableFuture<SpeechRecognitionResponse> result = call.result;
+    Future<?> task =
+        EXECUTOR.submit(
+            () -> {
+              call.startNanos = System.nanoTime();
+              try {
+                result.complete(
+                    speechRecognition.recognizeSpeech(
+                        inputFile,
+                        sampleRate,
+                        languageCode,
+                        channelCount,
+                        srtSubtitles,
+                        vttSubtitles,
+                        profanityFilter,
+                        spokenEmoji,
+                        spokenPunctuation,
+                        includeSNR));
+              } catch (Exception e) {
+                result.completeExceptionally(e);
+              }
+            });
+    // cancelling the result interrupts the provider call, which stops its remote job
+    result.whenComplete(
+        (response, e) -> {
+          if (result.isCancelled()) {
+            task.cancel(true);
+          }
+        });
+    return call;
+  }
+
+  /**
+   * Wait for the result of a provider until its deadline, which starts when the call starts.
+   *
+   * @param secondary If true and partial results are enabled, a failed or late provider yields null
+   *     instead of failing the whole request.
+   */
+  private SpeechRecognitionResponse await(ProviderCall call, boolean secondary) throws Exception {
+    if (call == null) {
+      return null;
+    }
+    // without a queue the call has a thread already, it may just not have recorded its start yet
+    long start = call.startNanos != 0 ? call.startNanos : System.nanoTime();
+    long deadline = start + configuration.getCombinedRecognitionTimeout().toNanos();
+    try {
+      return call.result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      if (secondary && configuration.isCombinedRecognitionPartialResults()) {
+        return null;
+      }
+      throw e;
+    } catch (ExecutionException e) {
+      if (secondary && configuration.isCombinedRecognitionPartialResults()) {
+        return null;
+      }
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    }
+  }
+
+  private static void cancel(ProviderCall call) {
+    if (call != null) {
+      call.result.cancel(true);
+    }
+  }
 
-    googleResult.setSrtSubtitles(amazonResult.getSrtSubtitles());
-    googleResult.setVttSubtitles(amazonResult.getVttSubtitles());
-    googleResult.setSignalToNoiseRatio(microsoftResult.getSignalToNoiseRatio());
-    return googleResult;
+  /** Result of a provider call and the time it started. */
+  private static class ProviderCall {
+    private final CompletableFuture<SpeechRecognitionResponse> result = new CompletableFuture<>();
+    private volatile long startNanos;
   }
 }
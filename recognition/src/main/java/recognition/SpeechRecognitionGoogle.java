@@ -70,7 +70,7 @@ public class SpeechRecognitionGoogle implements SpeechRecognition {
     if (callByReference) {
       audio = createGcsRecognitionAudio(inputFileInfo);
     } else {
-      byte[] contents = storage.read(inputFile);
+      byte[] contents = storage.read(inputFileInfo);
       audio = createLocalRecognitionAudio(contents);
     }
     // init recognition config
@@ -85,10 +85,20 @@ public class SpeechRecognitionGoogle implements SpeechRecognition {
     // invoke service
     long start = System.currentTimeMillis();
     SpeechClient speechClient = getSpeechClient();
-    OperationFuture<LongRunningRecognizeResponse, LongRunningRecognizeMetadata> future =
-        speechClient.longRunningRecognizeAsync(config, audio);
-    List<com.google.cloud.speech.v1p1beta1.SpeechRecognitionResult> results =
-        future.get().getResultsList();
+    List<com.google.cloud.speech.v1p1beta1.SpeechRecognitionResult> results;
+    try {
+      OperationFuture<LongRunningRecognizeResponse, LongRunningRecognizeMetadata> future =
+          speechClient.longRunningRecognizeAsync(config, audio);
+      try {
+        results = future.get().getResultsList();
+      } catch (InterruptedException e) {
+        // the caller gave up, e.g. after a timeout, stop the operation on the server as well
+        cancelOperation(speechClient, future);
+        throw e;
+      }
+    } finally {
+      speechClient.close();
+    }
     SpeechRecognitionAlternative alternative = results.get(0).getAlternatives(0);
     long end = System.currentTimeMillis();
     // parse response
@@ -96,10 +106,19 @@ public class SpeechRecognitionGoogle implements SpeechRecognition {
     SpeechRecognitionResponse response = parseResponse(jsonString);
     response.setProvider(Provider.GCP);
     response.setRecognitionTime(end - start);
-    speechClient.close();
     return response;
   }
 
+  private static void cancelOperation(
+      SpeechClient speechClient,
+      OperationFuture<LongRunningRecognizeResponse, LongRunningRecognizeMetadata> future) {
+    try {
+      speechClient.getOperationsClient().cancelOperation(future.getName());
+    } catch (Exception e) {
+      // ignore, the operation runs to completion and its result is never read
+    }
+  }
+
   private RecognitionAudio createGcsRecognitionAudio(FileInfo file) {
     String bucket = file.getBucketInfo().getBucketName();
     String key = file.getFileName();
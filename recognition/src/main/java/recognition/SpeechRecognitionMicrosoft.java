@@ -18,10 +18,11 @@ import storage.Storage;
 import storage.StorageImpl;
 
 import java.io.File;
-import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 public class SpeechRecognitionMicrosoft implements SpeechRecognition {
 
@@ -84,46 +85,66 @@ public class SpeechRecognitionMicrosoft implements SpeechRecognition {
             speechConfig.requestWordLevelTimestamps();
             speechConfig.setOutputFormat(OutputFormat.Detailed);
 
-            SpeechRecognizer speechRecognizer = new SpeechRecognizer(speechConfig, audioConfig);
-
-            long startTime = System.currentTimeMillis();
-            Future<SpeechRecognitionResult> future = speechRecognizer.recognizeOnceAsync();
-            SpeechRecognitionResult result = future.get();
-            long endTime = System.currentTimeMillis();
-
-            if (result.getReason() == ResultReason.RecognizedSpeech) {
-                JSONObject object = new JSONObject(result.getProperties().getProperty(PropertyId.SpeechServiceResponse_JsonResult));
-
+            try (SpeechRecognizer speechRecognizer = new SpeechRecognizer(speechConfig, audioConfig)) {
+                // recognizeOnceAsync stops after the first utterance, continuous recognition covers the whole file
+                List<JSONObject> utterances = Collections.synchronizedList(new ArrayList<>());
+                CompletableFuture<Void> done = new CompletableFuture<>();
+                speechRecognizer.recognized.addEventListener((sender, event) -> {
+                    if (event.getResult().getReason() == ResultReason.RecognizedSpeech) {
+                        utterances.add(new JSONObject(event.getResult().getProperties()
+                                .getProperty(PropertyId.SpeechServiceResponse_JsonResult)));
+                    }
+                });
+                speechRecognizer.canceled.addEventListener((sender, event) -> {
+                    if (event.getReason() == CancellationReason.Error) {
+                        done.completeExceptionally(new RuntimeException(String.format(
+                                "Speech Recognition Request was canceled. Reason: %s. Error Code: %d. Details: %s",
+                                event.getReason().getValue(), event.getErrorCode().getValue(), event.getErrorDetails())));
+                    } else {
+                        // the end of the file was reached
+                        done.complete(null);
+                    }
+                });
+                speechRecognizer.sessionStopped.addEventListener((sender, event) -> done.complete(null));
+
+                long startTime = System.currentTimeMillis();
+                speechRecognizer.startContinuousRecognitionAsync().get();
+                try {
+                    done.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                } finally {
+                    speechRecognizer.stopContinuousRecognitionAsync().get();
+                }
+                long endTime = System.currentTimeMillis();
+
+                if (utterances.isEmpty()) {
+                    return null;
+                }
                 return SpeechRecognitionResponse.builder()
                         .provider(Provider.AZURE)
-                        .fullTranscript(result.getText())
+                        .fullTranscript(getTranscriptFromResponses(utterances))
                         .recognitionTime(endTime - startTime)
-                        .words(getWordsFromResponse(object))
-                        .signalToNoiseRatio(getSNRFromResponse(object))
+                        .words(getWordsFromResponses(utterances))
+                        .signalToNoiseRatio(getSNRFromResponses(utterances))
                         .build();
             }
-            else if (result.getReason() == ResultReason.Canceled) {
-                CancellationDetails cancellation = CancellationDetails.fromResult(result);
-                throw new RuntimeException(String.format("Speech Recognition Request was canceled. Reason: %s. Error Code: %d. Details: %s",
-                        cancellation.getReason().getValue(), cancellation.getErrorCode().getValue(), cancellation.getErrorDetails()));
-            }
         }
-        return null;
     }
 
     private String createLocalTmpFile(FileInfo fileInfo) throws Exception {
-        byte[] data = new StorageImpl(credentials, configuration).read(fileInfo.getFileUrl());
         File tempDir = new File(System.getenv(ENV_TEMP_FILE_DIR));
         if(!tempDir.exists() || !tempDir.isDirectory()) {
             throw new IllegalArgumentException(String.format("'%s' Environment Variable is not set to an existing directory", ENV_TEMP_FILE_DIR));
         }
 
         File audioInputFile = File.createTempFile("core-", "-input-" + fileInfo.getFileName(), tempDir);
-        Files.write(audioInputFile.toPath(), data);
+        // stream the input to disk instead of reading it into memory first
+        new StorageImpl(credentials, configuration).download(fileInfo, audioInputFile.toPath());
         return audioInputFile.getAbsolutePath();
     }
 
-    private String convertAudioToWav(String inputFile, int sampleRate, int channelCount) throws Exception {
+    static String convertAudioToWav(String inputFile, int sampleRate, int channelCount) throws Exception {
         FFmpeg ffmpeg = new FFmpeg(System.getenv(ENV_FFMPEG_LOCATION) + File.separator + "ffmpeg.exe");
         FFprobe ffprobe = new FFprobe(System.getenv(ENV_FFMPEG_LOCATION) + File.separator + "ffprobe.exe");
 
@@ -152,30 +173,52 @@ public class SpeechRecognitionMicrosoft implements SpeechRecognition {
         return audioOutputFile.getAbsolutePath();
     }
 
-    private List<Word> getWordsFromResponse(JSONObject object) {
-        List<Word> words = new ArrayList<>();
-
-        JSONArray jsonArray = object.getJSONArray("NBest")
-                .getJSONObject(0)
-                .getJSONArray("Words");
-
-        for(int i = 0; i < jsonArray.length(); i++) {
-            JSONObject jsonWord = jsonArray.getJSONObject(i);
-
-            double startTime = jsonWord.getLong("Offset") / 10_000.0;
-            double duration = jsonWord.getLong("Duration") / 10_000.0;
+    private String getTranscriptFromResponses(List<JSONObject> objects) {
+        StringBuilder transcript = new StringBuilder();
+        for(JSONObject object : objects) {
+            if(transcript.length() > 0) {
+                transcript.append(' ');
+            }
+            transcript.append(object.getString("DisplayText"));
+        }
+        return transcript.toString();
+    }
 
-            words.add(Word.builder()
-                    .content(jsonWord.getString("Word"))
-                    .confidence(jsonWord.getDouble("Confidence"))
-                    .startTime(startTime)
-                    .endTime(startTime + duration)
-                    .build());
+    private List<Word> getWordsFromResponses(List<JSONObject> objects) {
+        List<Word> words = new ArrayList<>();
+        for(JSONObject object : objects) {
+            JSONArray jsonArray = object.getJSONArray("NBest")
+                    .getJSONObject(0)
+                    .getJSONArray("Words");
+
+            for(int i = 0; i < jsonArray.length(); i++) {
+                JSONObject jsonWord = jsonArray.getJSONObject(i);
+
+                // offsets are in ticks of 100ns from the start of the file, times are reported in seconds like for AWS and GCP
+                double startTime = jsonWord.getLong("Offset") / 10_000_000.0;
+                double duration = jsonWord.getLong("Duration") / 10_000_000.0;
+
+                words.add(Word.builder()
+                        .content(jsonWord.getString("Word"))
+                        .confidence(jsonWord.getDouble("Confidence"))
+                        .startTime(startTime)
+                        .endTime(startTime + duration)
+                        .build());
+            }
         }
         return words;
     }
 
-    private Float getSNRFromResponse(JSONObject object) {
-        return object.has("SNR") ? object.getFloat("SNR") : null;
+    private Float getSNRFromResponses(List<JSONObject> objects) {
+        // the mean over all utterances
+        double sum = 0;
+        int count = 0;
+        for(JSONObject object : objects) {
+            if(object.has("SNR")) {
+                sum += object.getDouble("SNR");
+                count++;
+            }
+        }
+        return count > 0 ? (float) (sum / count) : null;
     }
 }
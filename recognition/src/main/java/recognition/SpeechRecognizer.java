@@ -1,7 +1,10 @@
 package recognition;
 
+import java.util.ArrayList;
+import java.util.List;
 import shared.*;
 import shared.Runtime;
+import storage.StorageImpl;
 
 public class SpeechRecognizer {
 
@@ -84,6 +87,27 @@ public class SpeechRecognizer {
             speechRecognitionFeatures.isIncludeSNR());
   }
 
+  /**
+   * For long audio. The input is split into chunks at silences, which are transcribed concurrently
+   * and distributed round-robin over the given providers. The word times of the chunks are shifted
+   * to their position in the input. Subtitles are not supported.
+   */
+  public SpeechRecognitionResponse recognizeSpeechChunked(
+      SpeechRecognitionRequest speechRecognitionRequest, Provider... providers) throws Exception {
+    Runtime runtime = new Runtime();
+    SpeechRecognitionFactoryImpl factory =
+        new SpeechRecognitionFactoryImpl(configuration, credentials, runtime);
+    List<SpeechRecognition> recognizers = new ArrayList<>();
+    for (Provider provider : providers) {
+      recognizers.add(factory.getS2TProvider(provider));
+    }
+    SpeechRecognition speechRecognizer =
+        new ChunkedSpeechRecognition(
+            recognizers, new StorageImpl(credentials, configuration), configuration);
+    // invoke the service
+    return this.recognizeSpeech(speechRecognitionRequest, speechRecognizer);
+  }
+
   /** Provider is selected based on the location of the input. */
   public SpeechRecognitionResponse recognizeSpeech(
       SpeechRecognitionRequest speechRecognitionRequest) throws Exception {
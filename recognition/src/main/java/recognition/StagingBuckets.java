@@ -0,0 +1,198 @@
+package recognition;
+
+import java.math.BigInteger;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import shared.ClientRegistry;
+import shared.Credentials;
+import shared.ExpiringCache;
+import shared.Provider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortIncompleteMultipartUpload;
+import software.amazon.awssdk.services.s3.model.BucketAlreadyOwnedByYouException;
+import software.amazon.awssdk.services.s3.model.BucketLifecycleConfiguration;
+import software.amazon.awssdk.services.s3.model.ExpirationStatus;
+import software.amazon.awssdk.services.s3.model.LifecycleExpiration;
+import software.amazon.awssdk.services.s3.model.LifecycleRule;
+import software.amazon.awssdk.services.s3.model.LifecycleRuleFilter;
+import software.amazon.awssdk.services.s3.model.PutBucketLifecycleConfigurationRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.sts.StsClient;
+import storage.BucketInfo;
+import storage.FileInfo;
+import storage.Storage;
+
+/**
+ * Process-wide pool of S3 buckets that inputs of AWS Transcribe are staged in. There is one bucket
+ * per account and region, which is created on first use and reused afterwards. Each staged file
+ * gets a unique prefix and is deleted in the background once the job has finished. Files that are
+ * left behind, e.g. because the process died, expire through a lifecycle rule of the bucket.
+ */
+class StagingBuckets {
+
+  private static final StagingBuckets INSTANCE = new StagingBuckets();
+  private static final String PREFIX = "recognition/";
+  private static final int EXPIRATION_DAYS = 1;
+  private static final Duration ACCOUNT_TTL = Duration.ofHours(12);
+
+  private final ConcurrentMap<String, BucketInfo> buckets = new ConcurrentHashMap<>();
+  // bucket name -> lock, so a bucket is created by one thread at a time
+  private final ConcurrentMap<String, Object> creationLocks = new ConcurrentHashMap<>();
+  // access key id -> account id, session credentials rotate their key but keep the account
+  private final ExpiringCache<String, String> accounts = new ExpiringCache<>(1000);
+  private final ExecutorService cleanup =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "core-staging-cleanup");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  static StagingBuckets getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Copy a file to the staging bucket of the region.
+   *
+   * @return The staged copy, which should be passed to {@link #release(Storage, FileInfo)} once it
+   *     is no longer needed.
+   */
+  FileInfo stage(Storage storage, Credentials credentials, String region, FileInfo file)
+      throws Exception {
+    BucketInfo bucket = getBucket(storage, credentials, region);
+    // keep the original name, AWS Transcribe detects the media format from its extension
+    String name = file.getFileName().substring(file.getFileName().lastIndexOf('/') + 1);
+    FileInfo stagedFile =
+        FileInfo.parse(bucket.getBucketUrl() + PREFIX + UUID.randomUUID() + "/" + name);
+    storage.copy(file, stagedFile);
+    return stagedFile;
+  }
+
+  /** Delete a staged file in the background. */
+  void release(Storage storage, FileInfo stagedFile) {
+    cleanup.execute(
+        () -> {
+          try {
+            storage.delete(stagedFile);
+          } catch (Exception e) {
+            // ignore, the file expires through the lifecycle rule
+          }
+        });
+  }
+
+  private BucketInfo getBucket(Storage storage, Credentials credentials, String region)
+      throws Exception {
+    String bucketName = bucketName(getAccountId(credentials, region), region);
+    BucketInfo bucket = buckets.get(bucketName);
+    if (bucket != null) {
+      return bucket;
+    }
+    synchronized (creationLocks.computeIfAbsent(bucketName, name -> new Object())) {
+      bucket = buckets.get(bucketName);
+      if (bucket == null) {
+        createBucket(storage, bucketName, region);
+        putLifecycleRule(credentials, region, bucketName);
+        bucket = BucketInfo.parse("https://" + bucketName + ".s3." + region + ".amazonaws.com/");
+        buckets.put(bucketName, bucket);
+      }
+      return bucket;
+    }
+  }
+
+  private static void createBucket(Storage storage, String bucketName, String region)
+      throws Exception {
+    try {
+      storage.createBucket(Provider.AWS, bucketName, region);
+    } catch (BucketAlreadyOwnedByYouException e) {
+      // created by a previous process
+    } catch (S3Exception e) {
+      // another process is creating the same bucket right now
+      if (e.awsErrorDetails() == null
+          || !"OperationAborted".equals(e.awsErrorDetails().errorCode())) {
+        throw e;
+      }
+    }
+  }
+
+  /** The id of the account the credentials belong to, as reported by STS. */
+  private String getAccountId(Credentials credentials, String region) {
+    String accessKeyId = credentials.getAwsCredentials().resolveCredentials().accessKeyId();
+    return accounts.get(
+        accessKeyId,
+        ACCOUNT_TTL,
+        () -> getStsClient(credentials, region).getCallerIdentity().account());
+  }
+
+  private void putLifecycleRule(Credentials credentials, String region, String bucketName) {
+    LifecycleRule rule =
+        LifecycleRule.builder()
+            .id("expire-staged-files")
+            .filter(LifecycleRuleFilter.builder().prefix(PREFIX).build())
+            .status(ExpirationStatus.ENABLED)
+            .expiration(LifecycleExpiration.builder().days(EXPIRATION_DAYS).build())
+            .abortIncompleteMultipartUpload(
+                AbortIncompleteMultipartUpload.builder()
+                    .daysAfterInitiation(EXPIRATION_DAYS)
+                    .build())
+            .build();
+    getS3Client(credentials, region)
+        .putBucketLifecycleConfiguration(
+            PutBucketLifecycleConfigurationRequest.builder()
+                .bucket(bucketName)
+                .lifecycleConfiguration(BucketLifecycleConfiguration.builder().rules(rule).build())
+                .build());
+  }
+
+  /**
+   * The bucket name is derived from the account and the region, so every process using the same
+   * account finds the same bucket, even with rotating session credentials. The account id is
+   * hashed, as bucket names are public.
+   */
+  private static String bucketName(String accountId, String region)
+      throws NoSuchAlgorithmException {
+    byte[] hash =
+        MessageDigest.getInstance("SHA-256")
+            .digest((accountId + "/" + region).getBytes(StandardCharsets.UTF_8));
+    String hex = String.format("%064x", new BigInteger(1, hash));
+    return "core-staging-" + hex.substring(0, 16) + "-" + region;
+  }
+
+  private static S3Client getS3Client(Credentials credentials, String region) {
+    return ClientRegistry.getInstance()
+        .getClient(
+            S3Client.class,
+            Provider.AWS,
+            region,
+            credentials.getAwsCredentials(),
+            () ->
+                S3Client.builder()
+                    .region(Region.of(region))
+                    .endpointOverride(URI.create("https://s3." + region + ".amazonaws.com/"))
+                    .credentialsProvider(credentials.getAwsCredentials())
+                    .build());
+  }
+
+  private static StsClient getStsClient(Credentials credentials, String region) {
+    return ClientRegistry.getInstance()
+        .getClient(
+            StsClient.class,
+            Provider.AWS,
+            region,
+            credentials.getAwsCredentials(),
+            () ->
+                StsClient.builder()
+                    .region(Region.of(region))
+                    .credentialsProvider(credentials.getAwsCredentials())
+                    .build());
+  }
+}
@@ -0,0 +1,123 @@
+package recognition;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.transcribe.TranscribeClient;
+import software.amazon.awssdk.services.transcribe.model.DeleteTranscriptionJobRequest;
+import software.amazon.awssdk.services.transcribe.model.GetTranscriptionJobRequest;
+import software.amazon.awssdk.services.transcribe.model.LimitExceededException;
+import software.amazon.awssdk.services.transcribe.model.TranscriptionJob;
+import software.amazon.awssdk.services.transcribe.model.TranscriptionJobStatus;
+
+/**
+ * Polls the status of all running AWS Transcribe jobs of the process on a few shared threads. Each
+ * job is polled with exponential backoff and jitter, so long-running jobs cause few requests and
+ * the polls of concurrent jobs are spread out instead of arriving in bursts.
+ */
+class TranscriptionJobPoller {
+
+  private static final TranscriptionJobPoller INSTANCE = new TranscriptionJobPoller();
+  private static final int POOL_SIZE = 4;
+  private static final Duration INITIAL_DELAY = Duration.ofSeconds(1);
+  private static final Duration MAX_DELAY = Duration.ofSeconds(30);
+
+  private final ScheduledExecutorService scheduler =
+      Executors.newScheduledThreadPool(
+          POOL_SIZE,
+          runnable -> {
+            Thread thread = new Thread(runnable, "core-transcription-poller");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  static TranscriptionJobPoller getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Wait for a transcription job to terminate. Cancelling the returned future stops polling the
+   * job and deletes it, which also stops a job that is still running. Transcribe has no separate
+   * call to stop a job.
+   *
+   * @param transcribeClient The client of the region the job runs in. Must stay open until the
+   *     future has completed.
+   * @param jobName The name of the started job.
+   * @return Completes with the job once it has completed and exceptionally if the job has failed.
+   */
+  CompletableFuture<TranscriptionJob> await(TranscribeClient transcribeClient, String jobName) {
+    CompletableFuture<TranscriptionJob> result = new CompletableFuture<>();
+    result.whenComplete(
+        (job, e) -> {
+          if (result.isCancelled()) {
+            scheduler.execute(() -> delete(transcribeClient, jobName));
+          }
+        });
+    schedule(transcribeClient, jobName, result, 0);
+    return result;
+  }
+
+  private static void delete(TranscribeClient transcribeClient, String jobName) {
+    try {
+      transcribeClient.deleteTranscriptionJob(
+          DeleteTranscriptionJobRequest.builder().transcriptionJobName(jobName).build());
+    } catch (SdkException e) {
+      // ignore, the job runs to completion and its result is never read
+    }
+  }
+
+  private void schedule(
+      TranscribeClient transcribeClient,
+      String jobName,
+      CompletableFuture<TranscriptionJob> result,
+      int attempt) {
+    scheduler.schedule(
+        () -> poll(transcribeClient, jobName, result, attempt),
+        delayMillis(attempt),
+        TimeUnit.MILLISECONDS);
+  }
+
+  private void poll(
+      TranscribeClient transcribeClient,
+      String jobName,
+      CompletableFuture<TranscriptionJob> result,
+      int attempt) {
+    if (result.isDone()) {
+      // cancelled by the caller
+      return;
+    }
+    try {
+      TranscriptionJob transcriptionJob =
+          transcribeClient
+              .getTranscriptionJob(
+                  GetTranscriptionJobRequest.builder().transcriptionJobName(jobName).build())
+              .transcriptionJob();
+      TranscriptionJobStatus status = transcriptionJob.transcriptionJobStatus();
+      if (status.equals(TranscriptionJobStatus.COMPLETED)) {
+        result.complete(transcriptionJob);
+        return;
+      } else if (status.equals(TranscriptionJobStatus.FAILED)) {
+        result.completeExceptionally(
+            new RuntimeException("Transcription failed: " + transcriptionJob.failureReason()));
+        return;
+      }
+    } catch (LimitExceededException e) {
+      // throttled, try again after the next backoff interval
+    } catch (RuntimeException e) {
+      result.completeExceptionally(e);
+      return;
+    }
+    schedule(transcribeClient, jobName, result, attempt + 1);
+  }
+
+  /** Exponential backoff, randomized between half and the full interval. */
+  private static long delayMillis(int attempt) {
+    long delay =
+        Math.min(MAX_DELAY.toMillis(), INITIAL_DELAY.toMillis() << Math.min(attempt, 16));
+    return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+  }
+}
@@ -0,0 +1,199 @@
+package recognition;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Splits a 16-bit PCM WAV file into chunks at silences. The loudness of the audio is measured as
+ * the RMS of short frames, and each chunk ends at the quietest frame of the second half of its
+ * target length, so words are rarely cut. The audio is streamed from the file and is never held in
+ * memory as a whole.
+ */
+class WavChunker {
+
+  private static final int FRAME_MILLIS = 50;
+  private static final int HEADER_SIZE = 44;
+
+  /** A chunk of the audio and the position of its start in the original file. */
+  @AllArgsConstructor
+  @Getter
+  static class Chunk {
+    private final Path file;
+    private final double offsetSeconds;
+  }
+
+  /**
+   * Split the file into chunks of at most the given length.
+   *
+   * @param input A 16-bit PCM WAV file.
+   * @param chunkSeconds The target length of a chunk.
+   * @param directory The directory the chunks are written to.
+   * @return The chunks in order. A file that is shorter than a chunk yields a single chunk.
+   */
+  static List<Chunk> split(Path input, double chunkSeconds, Path directory) throws IOException {
+    try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+      Format format = readFormat(channel);
+      int frameBytes = Math.max(1, format.sampleRate * FRAME_MILLIS / 1000) * format.blockAlign;
+      double[] loudness = measureLoudness(channel, format, frameBytes);
+      int framesPerChunk = Math.max(2, (int) (chunkSeconds * 1000 / FRAME_MILLIS));
+      List<Chunk> chunks = new ArrayList<>();
+      int start = 0;
+      while (start < loudness.length) {
+        int end = loudness.length;
+        if (loudness.length - start > framesPerChunk) {
+          // split in the middle of the quietest stretch of the second half of the chunk
+          int limit = start + framesPerChunk;
+          int quietest = limit;
+          for (int frame = start + framesPerChunk / 2; frame < limit; frame++) {
+            if (loudness[frame] < loudness[quietest]) {
+              quietest = frame;
+            }
+          }
+          int quietEnd = quietest;
+          while (quietEnd < limit && loudness[quietEnd + 1] == loudness[quietest]) {
+            quietEnd++;
+          }
+          end = (quietest + quietEnd + 1) / 2;
+        }
+        long offset = (long) start * frameBytes;
+        long length = Math.min((long) end * frameBytes, format.dataSize) - offset;
+        Path chunk = directory.resolve("chunk-" + chunks.size() + ".wav");
+        writeChunk(channel, format, offset, length, chunk);
+        chunks.add(new Chunk(chunk, (double) offset / format.byteRate));
+        start = end;
+      }
+      return chunks;
+    }
+  }
+
+  /** The RMS of each frame, all channels are mixed. */
+  private static double[] measureLoudness(FileChannel channel, Format format, int frameBytes)
+      throws IOException {
+    double[] loudness = new double[(int) ((format.dataSize + frameBytes - 1) / frameBytes)];
+    ByteBuffer buffer = ByteBuffer.allocate(frameBytes).order(ByteOrder.LITTLE_ENDIAN);
+    for (int frame = 0; frame < loudness.length; frame++) {
+      buffer.clear();
+      long position = format.dataOffset + (long) frame * frameBytes;
+      buffer.limit((int) Math.min(frameBytes, format.dataOffset + format.dataSize - position));
+      while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+        // read the whole frame
+      }
+      buffer.flip();
+      double sum = 0;
+      int samples = buffer.remaining() / 2;
+      for (int i = 0; i < samples; i++) {
+        double sample = buffer.getShort();
+        sum += sample * sample;
+      }
+      loudness[frame] = samples > 0 ? Math.sqrt(sum / samples) : 0;
+    }
+    return loudness;
+  }
+
+  private static void writeChunk(
+      FileChannel channel, Format format, long offset, long length, Path target)
+      throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header.put("RIFF".getBytes()).putInt((int) (36 + length)).put("WAVE".getBytes());
+    header.put("fmt ".getBytes()).putInt(16).putShort((short) 1);
+    header.putShort((short) format.channels).putInt(format.sampleRate).putInt(format.byteRate);
+    header.putShort((short) format.blockAlign).putShort((short) 16);
+    header.put("data".getBytes()).putInt((int) length);
+    header.flip();
+    try (FileChannel out =
+        FileChannel.open(
+            target,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      while (header.hasRemaining()) {
+        out.write(header);
+      }
+      long position = format.dataOffset + offset;
+      long end = position + length;
+      while (position < end) {
+        position += channel.transferTo(position, end - position, out);
+      }
+    }
+  }
+
+  /** Parse the RIFF chunks up to the start of the audio data. */
+  private static Format readFormat(FileChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+    readFully(channel, buffer, 0);
+    if (!"RIFF".equals(fourCc(buffer, 0)) || !"WAVE".equals(fourCc(buffer, 8))) {
+      throw new IOException("Input is not a WAV file.");
+    }
+    Format format = null;
+    long position = 12;
+    ByteBuffer chunkHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    while (position + 8 <= channel.size()) {
+      chunkHeader.clear();
+      readFully(channel, chunkHeader, position);
+      String id = fourCc(chunkHeader, 0);
+      long size = Integer.toUnsignedLong(chunkHeader.getInt(4));
+      if (id.equals("fmt ")) {
+        ByteBuffer fmt = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, fmt, position + 8);
+        int audioFormat = fmt.getShort(0) & 0xffff;
+        int bitsPerSample = fmt.getShort(14) & 0xffff;
+        // WAVE_FORMAT_EXTENSIBLE is accepted as well, it wraps PCM for multi-channel audio
+        if ((audioFormat != 1 && audioFormat != 0xfffe) || bitsPerSample != 16) {
+          throw new IOException("Only 16-bit PCM WAV files can be split into chunks.");
+        }
+        format = new Format();
+        format.channels = fmt.getShort(2) & 0xffff;
+        format.sampleRate = fmt.getInt(4);
+        format.blockAlign = fmt.getShort(12) & 0xffff;
+        // the byte rate field is not always set correctly, it follows from the other fields
+        format.byteRate = format.sampleRate * format.blockAlign;
+      } else if (id.equals("data")) {
+        if (format == null) {
+          throw new IOException("WAV file has no format chunk.");
+        }
+        format.dataOffset = position + 8;
+        // streamed WAV files may have an unknown data size
+        format.dataSize = Math.min(size, channel.size() - format.dataOffset);
+        format.dataSize -= format.dataSize % format.blockAlign;
+        return format;
+      }
+      // chunks are padded to an even size
+      position += 8 + size + (size & 1);
+    }
+    throw new IOException("WAV file has no data chunk.");
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of WAV file.");
+      }
+    }
+  }
+
+  private static String fourCc(ByteBuffer buffer, int offset) {
+    byte[] id = new byte[4];
+    for (int i = 0; i < 4; i++) {
+      id[i] = buffer.get(offset + i);
+    }
+    return new String(id);
+  }
+
+  private static class Format {
+    private int channels;
+    private int sampleRate;
+    private int byteRate;
+    private int blockAlign;
+    private long dataOffset;
+    private long dataSize;
+  }
+}
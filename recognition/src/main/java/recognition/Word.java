@@ -9,8 +9,8 @@ import lombok.*;
 @Setter
 @ToString
 public class Word {
-    private Double startTime;
-    private Double endTime;
+    private Double startTime; // in seconds from the start of the audio file, for every provider
+    private Double endTime; // in seconds from the start of the audio file, for every provider
     private Double confidence;
     private String content;
 }
@@ -49,7 +49,7 @@ public class SentimentAnalyzerGoogle implements SentimentAnalyzer {
             String gcsUrl = "gs://" + bucket + "/" + key;
             builder.setGcsContentUri(gcsUrl);
         } else {
-            String text = new String(storage.read(inputFile));
+            String text = new String(storage.read(fileInfo));
             builder.setContent(text);
         }
 
@@ -5,6 +5,7 @@ import com.azure.identity.ClientSecretCredential;
 import com.azure.identity.ClientSecretCredentialBuilder;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.ToString;
 
@@ -25,6 +26,10 @@ public class AzureCredentials {
     private final String speechRecognitionApiKey;
     private final String ocrApiKey;
     private final String ocrEndpoint;
+    // the raw credentials, the SDK credential objects are only equal by identity
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final String identity;
 
     AzureCredentials(String credentialString) throws IOException {
         JsonNode azureRoot = getCredentialsJSONRoot(credentialString);
@@ -39,6 +44,12 @@ public class AzureCredentials {
         this.speechRecognitionApiKey = getSpeechRecognitionApiKey(azureRoot);
         this.ocrApiKey = getOcrApiKey(azureRoot);
         this.ocrEndpoint = getOcrEndpoint(azureRoot);
+        this.identity = azureRoot.toString();
+    }
+
+    /** Equal for credentials with the same contents, used to share clients between them. */
+    String identity() {
+        return identity;
     }
 
     private AzureKeyCredential getTranslationCredentials(JsonNode jsonObject) {
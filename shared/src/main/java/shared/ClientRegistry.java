@@ -0,0 +1,166 @@
+package shared;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+
+/**
+ * Process-wide registry of cloud SDK clients. Clients are created lazily on first use and cached by
+ * client type, provider, region and credentials, so that connection pools, TLS sessions and resolved
+ * credentials are shared by everyone using the same account. Credentials are compared by their
+ * contents, so separately loaded credentials of the same account share their clients. Clients are
+ * never closed while they may still be in use, all cached clients are closed on {@link #close()} or
+ * when the JVM shuts down.
+ */
+public class ClientRegistry implements AutoCloseable {
+
+  private static final ClientRegistry INSTANCE = new ClientRegistry();
+
+  static {
+    java.lang.Runtime.getRuntime()
+        .addShutdownHook(new Thread(INSTANCE::close, "core-client-registry-shutdown"));
+  }
+
+  private static final int MAX_INSTANCE_KEYS = 1024;
+
+  private final ConcurrentMap<ClientKey, Object> clients = new ConcurrentHashMap<>();
+  // the same clients by credentials instance, so credentials are only resolved for new instances
+  private final ConcurrentMap<ClientKey, Object> clientsByInstance = new ConcurrentHashMap<>();
+
+  public static ClientRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Return the cached client for the given key or create it if it does not exist yet.
+   *
+   * @param type The type of the client, e.g. S3Client.
+   * @param provider The provider the client connects to.
+   * @param region The region the client is bound to. Null, if the client is not region specific.
+   * @param credentials The credentials object the client is created with. Credentials are compared
+   *     by their contents.
+   * @param factory Creates a new client if none is cached yet. It is invoked outside of any lock and
+   *     may request other clients from the registry.
+   * @return The shared client instance.
+   */
+  public <T> T getClient(
+      Class<T> type, Provider provider, String region, Object credentials, Supplier<T> factory) {
+    ClientKey instanceKey = new ClientKey(type, provider, region, new Instance(credentials));
+    Object client = clientsByInstance.get(instanceKey);
+    if (client != null) {
+      return type.cast(client);
+    }
+    ClientKey key = new ClientKey(type, provider, region, identityOf(credentials));
+    client = clients.get(key);
+    if (client == null) {
+      // concurrent misses may create the client more than once, all but the first one are closed
+      T created = factory.get();
+      client = clients.putIfAbsent(key, created);
+      if (client != null) {
+        closeQuietly(created);
+      } else {
+        client = created;
+      }
+    }
+    if (clientsByInstance.size() >= MAX_INSTANCE_KEYS) {
+      // only a shortcut, clients are found again through their resolved credentials
+      clientsByInstance.clear();
+    }
+    clientsByInstance.put(instanceKey, client);
+    return type.cast(client);
+  }
+
+  /**
+   * The contents of the credentials that a client depends on. AWS credential providers are
+   * resolved, so providers of the same keys are equal. Azure credentials are reduced to their keys,
+   * as the SDK credential classes are only equal by identity. Google credentials compare their
+   * contents themselves.
+   */
+  private static Object identityOf(Object credentials) {
+    if (credentials instanceof AwsCredentialsProvider) {
+      return ((AwsCredentialsProvider) credentials).resolveCredentials();
+    }
+    if (credentials instanceof AzureCredentials) {
+      return ((AzureCredentials) credentials).identity();
+    }
+    return credentials;
+  }
+
+  /** Close all cached clients. Clients requested afterwards are created again. */
+  @Override
+  public void close() {
+    List<Object> closing = new ArrayList<>(clients.values());
+    clients.clear();
+    clientsByInstance.clear();
+    for (Object client : closing) {
+      closeQuietly(client);
+    }
+  }
+
+  private static void closeQuietly(Object client) {
+    if (client instanceof AutoCloseable) {
+      try {
+        ((AutoCloseable) client).close();
+      } catch (Exception e) {
+        // ignore, the client is discarded anyway
+      }
+    }
+  }
+
+  /** Compares credentials by identity, which is cheaper than resolving them. */
+  private static class Instance {
+    private final Object credentials;
+
+    private Instance(Object credentials) {
+      this.credentials = credentials;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Instance && ((Instance) o).credentials == credentials;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(credentials);
+    }
+  }
+
+  private static class ClientKey {
+    private final Class<?> type;
+    private final Provider provider;
+    private final String region;
+    private final Object credentials;
+
+    private ClientKey(Class<?> type, Provider provider, String region, Object credentials) {
+      this.type = type;
+      this.provider = provider;
+      this.region = region;
+      this.credentials = credentials;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ClientKey)) {
+        return false;
+      }
+      ClientKey other = (ClientKey) o;
+      return type.equals(other.type)
+          && provider == other.provider
+          && Objects.equals(region, other.region)
+          && Objects.equals(credentials, other.credentials);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(type, provider, region, credentials);
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package shared;
 
 import com.azure.core.management.AzureEnvironment;
+import java.time.Duration;
 import lombok.*;
 
 @Builder
@@ -14,4 +15,24 @@ public class Configuration {
   @Builder.Default private String defaultRegionGcp = "us";
   @Builder.Default private String defaultRegionAzure = "germanywestcentral";
   @Builder.Default private AzureEnvironment defaultAzureEnvironment = AzureEnvironment.AZURE;
+  @Builder.Default private Duration regionCacheTtl = Duration.ofHours(1);
+  @Builder.Default private Duration storageAccountLocationTtl = Duration.ofHours(24);
+  @Builder.Default private long multipartThreshold = 16 * 1024 * 1024;
+  @Builder.Default private int multipartPartSize = 8 * 1024 * 1024;
+  @Builder.Default private int downloadPartSize = 8 * 1024 * 1024;
+  @Builder.Default private int transferConcurrency = 8;
+  @Builder.Default private int transferRetries = 3;
+  @Builder.Default private boolean prefetchListPages = true;
+  // cloud files read through Storage are cached in this directory, null disables the disk cache
+  private String diskCacheDirectory;
+  @Builder.Default private long diskCacheMaxBytes = 1024L * 1024 * 1024;
+  // deadline of each provider that SpeechRecognitionCombined runs in parallel, counted from the
+  // start of its call, late jobs stop
+  @Builder.Default private Duration combinedRecognitionTimeout = Duration.ofMinutes(30);
+  // return the Google result without subtitles or SNR if AWS or Azure fail or miss the deadline
+  @Builder.Default private boolean combinedRecognitionPartialResults = false;
+  // target length of the chunks that chunked speech recognition splits the audio into at silences
+  @Builder.Default private Duration chunkedRecognitionChunkDuration = Duration.ofSeconds(60);
+  // number of chunks that chunked speech recognition transcribes concurrently
+  @Builder.Default private int chunkedRecognitionConcurrency = 8;
 }
@@ -0,0 +1,168 @@
+package shared;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe, size-bounded cache whose entries expire after a time-to-live. When the cache is
+ * full, the least recently used entries are evicted. The size is either the number of entries or
+ * the total weight of the values, e.g. their size in bytes. Null values are cached as well, so
+ * negative lookups are not repeated until they expire.
+ */
+public class ExpiringCache<K, V> {
+
+  private final long maxWeight;
+  private final ToLongFunction<V> weigher;
+  private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private long weight;
+  // loads in progress, invalidating a key drops its load so an outdated value is not cached
+  private final Map<K, Object> loads = new HashMap<>();
+
+  /** Create a cache that holds at most {@code maxSize} entries. */
+  public ExpiringCache(int maxSize) {
+    this(maxSize, value -> 1);
+  }
+
+  /**
+   * Create a cache whose values weigh at most {@code maxWeight} in total. Values that are heavier
+   * than the whole cache are not cached.
+   *
+   * @param weigher Computes the weight of a value, must be the same for the lifetime of the value.
+   */
+  public ExpiringCache(long maxWeight, ToLongFunction<V> weigher) {
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
+  }
+
+  /** Computes a value that is not cached yet. */
+  @FunctionalInterface
+  public interface Loader<V, E extends Exception> {
+    V load() throws E;
+  }
+
+  /**
+   * Return the cached value for the key. If there is no value or it has expired, the value is
+   * loaded and cached for the given time-to-live. The loader is invoked without holding the lock,
+   * so concurrent misses for the same key may load the value more than once. If the cache is
+   * invalidated while the value is loaded, the value is returned but not cached, as it may already
+   * be outdated.
+   */
+  public <E extends Exception> V get(K key, Duration ttl, Loader<V, E> loader) throws E {
+    Object load = new Object();
+    synchronized (this) {
+      Entry<V> entry = entries.get(key);
+      if (entry != null && !entry.isExpired()) {
+        hits.incrementAndGet();
+        return entry.value;
+      }
+      loads.put(key, load);
+    }
+    misses.incrementAndGet();
+    V value;
+    try {
+      value = loader.load();
+    } catch (Exception e) {
+      synchronized (this) {
+        loads.remove(key, load);
+      }
+      throw e;
+    }
+    synchronized (this) {
+      if (loads.remove(key, load)) {
+        put(key, value, ttl);
+      }
+    }
+    return value;
+  }
+
+  /** Return the cached value for the key, or null if there is no value or it has expired. */
+  public synchronized V getIfPresent(K key) {
+    Entry<V> entry = entries.get(key);
+    if (entry != null && !entry.isExpired()) {
+      hits.incrementAndGet();
+      return entry.value;
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  public synchronized void put(K key, V value, Duration ttl) {
+    long valueWeight = value != null ? weigher.applyAsLong(value) : 1;
+    if (valueWeight > maxWeight) {
+      remove(key);
+      return;
+    }
+    Entry<V> previous =
+        entries.put(key, new Entry<>(value, valueWeight, System.nanoTime() + ttl.toNanos()));
+    weight += valueWeight - (previous != null ? previous.weight : 0);
+    Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+    while (weight > maxWeight && iterator.hasNext()) {
+      weight -= iterator.next().getValue().weight;
+      iterator.remove();
+      evictions.incrementAndGet();
+    }
+  }
+
+  public synchronized void invalidate(K key) {
+    loads.remove(key);
+    remove(key);
+  }
+
+  private void remove(K key) {
+    Entry<V> entry = entries.remove(key);
+    if (entry != null) {
+      weight -= entry.weight;
+    }
+  }
+
+  public synchronized void invalidateAll() {
+    loads.clear();
+    entries.clear();
+    weight = 0;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /** The total weight of the cached values. */
+  public synchronized long weight() {
+    return weight;
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  private static class Entry<V> {
+    private final V value;
+    private final long weight;
+    private final long expiresAt;
+
+    private Entry(V value, long weight, long expiresAt) {
+      this.value = value;
+      this.weight = weight;
+      this.expiresAt = expiresAt;
+    }
+
+    private boolean isExpired() {
+      return System.nanoTime() - expiresAt >= 0;
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package storage;
+
+import java.io.IOException;
+
+/**
+ * Implemented by the streams and channels returned by the openWrite methods of {@link Storage}.
+ * Closing them publishes the written data, so a writer that fails should abort them instead.
+ */
+public interface Abortable {
+
+  /**
+   * Discard the data written so far without publishing it. The target file is left unchanged and
+   * a subsequent close does nothing.
+   */
+  void abort() throws IOException;
+
+  /**
+   * Abort the stream if it supports it, otherwise close it. Used on failure, where publishing the
+   * partial data can only be avoided for abortable streams.
+   */
+  static void abortOrClose(AutoCloseable stream) throws IOException {
+    if (stream instanceof Abortable) {
+      ((Abortable) stream).abort();
+    } else {
+      try {
+        stream.close();
+      } catch (IOException | RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IOException(e);
+      }
+    }
+  }
+
+  /** Same as {@link #abortOrClose(AutoCloseable)}, but adds errors to the original failure. */
+  static void abortOrClose(AutoCloseable stream, Exception failure) {
+    try {
+      if (stream instanceof Abortable) {
+        ((Abortable) stream).abort();
+      } else {
+        stream.close();
+      }
+    } catch (Exception e) {
+      failure.addSuppressed(e);
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/** Channel over a write stream, aborting the channel aborts the stream. */
+class AbortableChannel implements WritableByteChannel, Abortable {
+
+  private final WritableByteChannel channel;
+  private final OutputStream out;
+
+  AbortableChannel(OutputStream out) {
+    this.channel = Channels.newChannel(out);
+    this.out = out;
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    return channel.write(src);
+  }
+
+  @Override
+  public boolean isOpen() {
+    return channel.isOpen();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  @Override
+  public void abort() throws IOException {
+    Abortable.abortOrClose(out);
+  }
+}
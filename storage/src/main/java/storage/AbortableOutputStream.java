@@ -0,0 +1,47 @@
+package storage;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** Output stream that runs an abort action instead of closing the underlying stream on abort. */
+class AbortableOutputStream extends FilterOutputStream implements Abortable {
+
+  /** Discards the data of the underlying stream. */
+  @FunctionalInterface
+  interface AbortAction {
+    void abort() throws IOException;
+  }
+
+  private final AbortAction abortAction;
+  private boolean done;
+
+  AbortableOutputStream(OutputStream out, AbortAction abortAction) {
+    super(out);
+    this.abortAction = abortAction;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    // the default implementation writes byte by byte
+    out.write(b, off, len);
+  }
+
+  @Override
+  public void abort() throws IOException {
+    if (done) {
+      return;
+    }
+    done = true;
+    abortAction.abort();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (done) {
+      return;
+    }
+    done = true;
+    super.close();
+  }
+}
@@ -0,0 +1,59 @@
+package storage;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link Storage}. Operations return immediately and complete their future
+ * once the transfer has finished, so many transfers can be in flight without holding a thread each.
+ * Failures complete the future exceptionally instead of being thrown.
+ */
+public interface AsyncStorage {
+
+  /**
+   * Read a file.
+   *
+   * @param fileUrl The url of the file to read. Can point to the local filesystem, AWS S3, Google
+   *     Cloud Storage or Azure Blob Storage.
+   * @return The file contents as byte array. Completes exceptionally if the file does not exist.
+   */
+  CompletableFuture<byte[]> readAsync(String fileUrl);
+
+  /** Same as {@link #readAsync(String)}, but takes an already parsed url. */
+  CompletableFuture<byte[]> readAsync(FileInfo fileInfo);
+
+  /**
+   * Write data to a file. Creates a new file if it does not exist and overwrites a file if it
+   * already exists.
+   *
+   * @param data The content that should be written to the file as byte array.
+   * @param fileUrl The url of the file to write. Can point to the local filesystem, AWS S3, Google
+   *     Cloud Storage or Azure Blob Storage.
+   * @return Completes once the file has been written.
+   */
+  CompletableFuture<Void> writeAsync(byte[] data, String fileUrl);
+
+  /** Same as {@link #writeAsync(byte[], String)}, but takes an already parsed url. */
+  CompletableFuture<Void> writeAsync(byte[] data, FileInfo fileInfo);
+
+  /**
+   * Delete a file.
+   *
+   * @param fileUrl The url of the file to delete. Can point to the local filesystem, AWS S3, Google
+   *     Cloud Storage or Azure Blob Storage.
+   * @return True if the file was deleted and false if the file did not exist.
+   */
+  CompletableFuture<Boolean> deleteAsync(String fileUrl);
+
+  /** Same as {@link #deleteAsync(String)}, but takes an already parsed url. */
+  CompletableFuture<Boolean> deleteAsync(FileInfo fileInfo);
+
+  /**
+   * List the files of a bucket.
+   *
+   * @param bucketUrl The url of the bucket with trailing slash at the end.
+   * @param prefix Only files whose name starts with the prefix are listed, null lists all files.
+   * @return The names of the files in the bucket.
+   */
+  CompletableFuture<List<String>> listFilesAsync(String bucketUrl, String prefix);
+}
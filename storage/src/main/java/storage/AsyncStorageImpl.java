@@ -0,0 +1,115 @@
+package storage;
+
+import shared.Configuration;
+import shared.Credentials;
+import shared.Provider;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class AsyncStorageImpl implements AsyncStorage {
+
+  private final Credentials credentials;
+  private final Configuration configuration;
+  // one provider per cloud, created on first use and shared by all callers
+  private final Map<Provider, AsyncStorageProvider> providers = new ConcurrentHashMap<>();
+
+  public AsyncStorageImpl(Credentials credentials) {
+    this(credentials, Configuration.builder().build());
+  }
+
+  public AsyncStorageImpl(Credentials credentials, Configuration configuration) {
+    this.credentials = credentials;
+    this.configuration = configuration;
+  }
+
+  @Override
+  public CompletableFuture<byte[]> readAsync(String fileUrl) {
+    return parse(fileUrl).thenCompose(this::readAsync);
+  }
+
+  @Override
+  public CompletableFuture<byte[]> readAsync(FileInfo fileInfo) {
+    if (fileInfo.isLocal()) {
+      // file is stored on the local filesystem
+      return BlockingCalls.call(() -> Files.readAllBytes(Path.of(fileInfo.getFileUrl())));
+    }
+    // file is stored in cloud storage
+    return getStorageProvider(fileInfo.getBucketInfo().getProvider()).read(fileInfo);
+  }
+
+  @Override
+  public CompletableFuture<Void> writeAsync(byte[] data, String fileUrl) {
+    return parse(fileUrl).thenCompose(fileInfo -> writeAsync(data, fileInfo));
+  }
+
+  @Override
+  public CompletableFuture<Void> writeAsync(byte[] data, FileInfo fileInfo) {
+    if (fileInfo.isLocal()) {
+      // file is stored on the local filesystem
+      return BlockingCalls.call(
+          () -> {
+            Files.write(Path.of(fileInfo.getFileUrl()), data);
+            return null;
+          });
+    }
+    // file is stored in cloud storage
+    return getStorageProvider(fileInfo.getBucketInfo().getProvider()).write(data, fileInfo);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> deleteAsync(String fileUrl) {
+    return parse(fileUrl).thenCompose(this::deleteAsync);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> deleteAsync(FileInfo fileInfo) {
+    if (fileInfo.isLocal()) {
+      // file is stored on the local filesystem
+      return BlockingCalls.call(() -> new File(fileInfo.getFileUrl()).delete());
+    }
+    // file is stored in cloud storage
+    return getStorageProvider(fileInfo.getBucketInfo().getProvider()).delete(fileInfo);
+  }
+
+  @Override
+  public CompletableFuture<List<String>> listFilesAsync(String bucketUrl, String prefix) {
+    BucketInfo bucketInfo;
+    try {
+      bucketInfo = BucketInfo.parse(bucketUrl);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return getStorageProvider(bucketInfo.getProvider()).listFiles(bucketInfo, prefix);
+  }
+
+  /** Parse the url, an invalid url fails the returned future instead of throwing. */
+  private static CompletableFuture<FileInfo> parse(String fileUrl) {
+    try {
+      return CompletableFuture.completedFuture(FileInfo.parse(fileUrl));
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /** Get the long-lived storage provider for the cloud, create it if it does not exist yet. */
+  private AsyncStorageProvider getStorageProvider(Provider provider) {
+    return providers.computeIfAbsent(provider, this::createStorageProvider);
+  }
+
+  private AsyncStorageProvider createStorageProvider(Provider provider) {
+    if (provider.equals(Provider.AWS)) {
+      return new AsyncStorageProviderAmazon(credentials, configuration);
+    } else if (provider.equals(Provider.GCP)) {
+      return new AsyncStorageProviderGoogle(credentials, configuration);
+    } else if (provider.equals(Provider.AZURE)) {
+      return new AsyncStorageProviderMicrosoft(credentials, configuration);
+    }
+    throw new IllegalArgumentException("Unsupported storage provider " + provider + ".");
+  }
+}
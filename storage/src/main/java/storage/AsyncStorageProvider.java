@@ -0,0 +1,19 @@
+package storage;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Provider specific non-blocking storage operations. Instances are long-lived and shared by all
+ * callers of an {@link AsyncStorageImpl}, so implementations must be thread-safe.
+ */
+public interface AsyncStorageProvider {
+
+  CompletableFuture<byte[]> read(FileInfo fileInfo);
+
+  CompletableFuture<Void> write(byte[] data, FileInfo fileInfo);
+
+  CompletableFuture<Boolean> delete(FileInfo fileInfo);
+
+  CompletableFuture<List<String>> listFiles(BucketInfo bucketInfo, String prefix);
+}
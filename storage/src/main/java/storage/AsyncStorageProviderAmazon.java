@@ -0,0 +1,110 @@
+package storage;
+
+import shared.ClientRegistry;
+import shared.Configuration;
+import shared.Credentials;
+import shared.Provider;
+import software.amazon.awssdk.core.BytesWrapper;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking storage operations on the S3 async client. Requests are sent over the SDK's Netty
+ * based HTTP client, so no thread is held while a transfer is in flight.
+ */
+public class AsyncStorageProviderAmazon implements AsyncStorageProvider {
+
+  private final Credentials credentials;
+  // resolves bucket regions that are not part of the url, the result is cached per bucket
+  private final StorageProviderAmazon regionResolver;
+
+  public AsyncStorageProviderAmazon(Credentials credentials, Configuration configuration) {
+    this.credentials = credentials;
+    this.regionResolver = new StorageProviderAmazon(credentials, configuration);
+  }
+
+  @Override
+  public CompletableFuture<byte[]> read(FileInfo fileInfo) {
+    GetObjectRequest request =
+        GetObjectRequest.builder()
+            .bucket(fileInfo.getBucketInfo().getBucketName())
+            .key(fileInfo.getFileName())
+            .build();
+    return getClient(fileInfo.getBucketInfo())
+        .thenCompose(s3 -> s3.getObject(request, AsyncResponseTransformer.toBytes()))
+        .thenApply(BytesWrapper::asByteArrayUnsafe);
+  }
+
+  @Override
+  public CompletableFuture<Void> write(byte[] data, FileInfo fileInfo) {
+    PutObjectRequest request =
+        PutObjectRequest.builder()
+            .bucket(fileInfo.getBucketInfo().getBucketName())
+            .key(fileInfo.getFileName())
+            .build();
+    return getClient(fileInfo.getBucketInfo())
+        .thenCompose(s3 -> s3.putObject(request, AsyncRequestBody.fromBytes(data)))
+        .thenApply(response -> null);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> delete(FileInfo fileInfo) {
+    DeleteObjectRequest request =
+        DeleteObjectRequest.builder()
+            .bucket(fileInfo.getBucketInfo().getBucketName())
+            .key(fileInfo.getFileName())
+            .build();
+    // same as the blocking variant, a failed delete is reported as false
+    return getClient(fileInfo.getBucketInfo())
+        .thenCompose(s3 -> s3.deleteObject(request))
+        .handle((response, e) -> e == null);
+  }
+
+  @Override
+  public CompletableFuture<List<String>> listFiles(BucketInfo bucketInfo, String prefix) {
+    ListObjectsV2Request request =
+        ListObjectsV2Request.builder().bucket(bucketInfo.getBucketName()).prefix(prefix).build();
+    // the publisher signals the objects one after another, so the list needs no synchronization
+    List<String> fileKeys = new ArrayList<>();
+    return getClient(bucketInfo)
+        .thenCompose(
+            s3 -> s3.listObjectsV2Paginator(request).contents().subscribe(o -> fileKeys.add(o.key())))
+        .thenApply(done -> fileKeys);
+  }
+
+  /** Get the client for the region of the bucket. */
+  private CompletableFuture<S3AsyncClient> getClient(BucketInfo bucketInfo) {
+    if (bucketInfo.getRegion() != null) {
+      return CompletableFuture.completedFuture(getAmazonS3Client(bucketInfo.getRegion()));
+    }
+    // the region is only queried once per bucket, later calls are answered by the region cache
+    return BlockingCalls.call(() -> getAmazonS3Client(regionResolver.getRegion(bucketInfo)));
+  }
+
+  /** Get the shared amazon S3 async client of SDK V2 for the region */
+  private S3AsyncClient getAmazonS3Client(String region) {
+    return ClientRegistry.getInstance()
+        .getClient(
+            S3AsyncClient.class,
+            Provider.AWS,
+            region,
+            credentials.getAwsCredentials(),
+            () ->
+                S3AsyncClient.builder()
+                    .region(Region.of(region))
+                    .endpointOverride(URI.create("https://s3." + region + ".amazonaws.com/"))
+                    .credentialsProvider(credentials.getAwsCredentials())
+                    .build());
+  }
+}
@@ -0,0 +1,51 @@
+package storage;
+
+import shared.Configuration;
+import shared.Credentials;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Storage operations for Google Cloud Storage. The GCS client library has no non-blocking API, so
+ * the blocking provider is run on the bounded pool of {@link BlockingCalls}.
+ */
+public class AsyncStorageProviderGoogle implements AsyncStorageProvider {
+
+  private final StorageProviderGoogle provider;
+
+  public AsyncStorageProviderGoogle(Credentials credentials, Configuration configuration) {
+    this.provider = new StorageProviderGoogle(credentials, configuration);
+  }
+
+  @Override
+  public CompletableFuture<byte[]> read(FileInfo fileInfo) {
+    return BlockingCalls.call(() -> provider.read(fileInfo));
+  }
+
+  @Override
+  public CompletableFuture<Void> write(byte[] data, FileInfo fileInfo) {
+    return BlockingCalls.call(
+        () -> {
+          provider.write(data, fileInfo);
+          return null;
+        });
+  }
+
+  @Override
+  public CompletableFuture<Boolean> delete(FileInfo fileInfo) {
+    return BlockingCalls.call(() -> provider.delete(fileInfo));
+  }
+
+  @Override
+  public CompletableFuture<List<String>> listFiles(BucketInfo bucketInfo, String prefix) {
+    return BlockingCalls.call(
+        () -> {
+          try (Stream<String> files = provider.listFiles(bucketInfo, prefix)) {
+            return files.collect(Collectors.toList());
+          }
+        });
+  }
+}
@@ -0,0 +1,85 @@
+package storage;
+
+import com.azure.core.util.BinaryData;
+import com.azure.storage.blob.BlobContainerAsyncClient;
+import com.azure.storage.blob.BlobServiceAsyncClient;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.models.BlobItem;
+import com.azure.storage.blob.models.ListBlobsOptions;
+import com.azure.storage.common.StorageSharedKeyCredential;
+import shared.ClientRegistry;
+import shared.Configuration;
+import shared.Credentials;
+import shared.Provider;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking storage operations on the Azure async clients. Requests are sent over the SDK's
+ * Netty based HTTP client, so no thread is held while a transfer is in flight.
+ */
+public class AsyncStorageProviderMicrosoft implements AsyncStorageProvider {
+
+    private final Credentials credentials;
+
+    public AsyncStorageProviderMicrosoft(Credentials credentials, Configuration configuration) {
+        this.credentials = credentials;
+    }
+
+    @Override
+    public CompletableFuture<byte[]> read(FileInfo fileInfo) {
+        BlobContainerAsyncClient client = getBlobStorageClient(fileInfo.getBucketInfo().getBucketName());
+        return client.getBlobAsyncClient(fileInfo.getFileName())
+                .downloadContent()
+                .map(BinaryData::toBytes)
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Void> write(byte[] data, FileInfo fileInfo) {
+        BlobContainerAsyncClient client = getBlobStorageClient(fileInfo.getBucketInfo().getBucketName());
+        return client.getBlobAsyncClient(fileInfo.getFileName())
+                .upload(BinaryData.fromBytes(data), true)
+                .then()
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> delete(FileInfo fileInfo) {
+        BlobContainerAsyncClient client = getBlobStorageClient(fileInfo.getBucketInfo().getBucketName());
+        return client.getBlobAsyncClient(fileInfo.getFileName()).deleteIfExists().toFuture();
+    }
+
+    @Override
+    public CompletableFuture<List<String>> listFiles(BucketInfo bucketInfo, String prefix) {
+        BlobContainerAsyncClient client = getBlobStorageClient(bucketInfo.getBucketName());
+        return client.listBlobs(new ListBlobsOptions().setPrefix(prefix))
+                .map(BlobItem::getName)
+                .collectList()
+                .toFuture();
+    }
+
+    private BlobContainerAsyncClient getBlobStorageClient(String bucketName) {
+        return getBlobServiceClient().getBlobContainerAsyncClient(bucketName);
+    }
+
+    /** Get the shared Azure Blob Storage async client of the storage account */
+    private BlobServiceAsyncClient getBlobServiceClient() {
+        return ClientRegistry.getInstance().getClient(
+                BlobServiceAsyncClient.class,
+                Provider.AZURE,
+                null,
+                credentials.getAzureCredentials(),
+                () -> {
+                    StorageSharedKeyCredential credential = new StorageSharedKeyCredential(
+                            credentials.getAzureCredentials().getStorageAccountName(),
+                            credentials.getAzureCredentials().getStorageApiKey());
+
+                    return new BlobServiceClientBuilder()
+                            .endpoint(String.format("https://%s.blob.core.windows.net", credentials.getAzureCredentials().getStorageAccountName()))
+                            .credential(credential)
+                            .buildAsyncClient();
+                });
+    }
+}
@@ -0,0 +1,42 @@
+package storage;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs blocking calls for the asynchronous storage API, e.g. local file access or SDKs without a
+ * non-blocking client. The pool is separate from the {@link ParallelTransfer} executor, because a
+ * blocking call may itself wait for parallel transfer parts.
+ */
+final class BlockingCalls {
+
+  private static final int POOL_SIZE = 32;
+  private static final ExecutorService EXECUTOR =
+      Executors.newFixedThreadPool(
+          POOL_SIZE,
+          runnable -> {
+            Thread thread = new Thread(runnable, "core-storage-async");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private BlockingCalls() {}
+
+  /** Run the call in the background. Exceptions complete the future exceptionally. */
+  static <T> CompletableFuture<T> call(Callable<T> call) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            return call.call();
+          } catch (RuntimeException e) {
+            throw e;
+          } catch (Exception e) {
+            throw new CompletionException(e);
+          }
+        },
+        EXECUTOR);
+  }
+}
@@ -18,71 +18,43 @@ public class BucketInfo {
   public static final String GCP_BUCKET_REGEX = "(http|https)://storage.cloud.google.com/(.*?)/(.*)";
   public static final String AZURE_BUCKET_REGEX = "(http|https)://(.*).blob.core.windows.net/([a-z0-9][a-z0-9\\-]*)/?";
 
+  private static final Pattern AWS_BUCKET_PATTERN = Pattern.compile(AWS_BUCKET_REGEX);
+  private static final Pattern GCP_BUCKET_PATTERN = Pattern.compile(GCP_BUCKET_REGEX);
+  private static final Pattern AZURE_BUCKET_PATTERN = Pattern.compile(AZURE_BUCKET_REGEX);
+
   private Provider provider; // AWS | GCP
-  private String region; // this is null for GCP, as the region is not included in the url, for Azure it's the name of the Resource
+  private String region; // parsed from the url for AWS, for GCP and Azure it is null until the location of the bucket has been resolved
   private String bucketName; //  simply the bucket name
   private String bucketUrl; // includes trailing slash at the end
 
+  /** Parse provider, bucket name and region with a single match of the bucket url. */
   public static BucketInfo parse(String bucketUrl) {
-    return BucketInfo.builder()
-        .provider(getProvider(bucketUrl))
-        .bucketName(getBucketName(bucketUrl))
-        .region(getBucketRegion(bucketUrl))
-        .bucketUrl(bucketUrl)
-        .build();
-  }
-
-  /** Get provider from bucket URL. */
-  private static Provider getProvider(String bucketUrl) {
-    if (bucketUrl.matches(AWS_BUCKET_REGEX)) {
-      return Provider.AWS;
-    } else if (bucketUrl.matches(GCP_BUCKET_REGEX)) {
-      return Provider.GCP;
-    } else if(bucketUrl.matches(AZURE_BUCKET_REGEX)) {
-      return Provider.AZURE;
-    }
-    return null;
-  }
-
-  /** Get the location where the storage bucket resides. */
-  private static String getBucketRegion(String bucketUrl) {
-    if (bucketUrl.matches(AWS_BUCKET_REGEX)) {
+    BucketInfoBuilder builder = BucketInfo.builder().bucketUrl(bucketUrl);
+    Matcher m = AWS_BUCKET_PATTERN.matcher(bucketUrl);
+    if (m.matches()) {
       // region is encoded in the storage url
-      Pattern p = Pattern.compile(AWS_BUCKET_REGEX);
-      Matcher m = p.matcher(bucketUrl);
-      if (m.find()) {
-        String region = m.group(3);
-        if (region == null || region.isEmpty() || region.isBlank()) {
-          return null;
-        }
-        return region.substring(0, region.length() - 1);
-      }
+      return builder
+          .provider(Provider.AWS)
+          .bucketName(m.group(2))
+          .region(getAwsBucketRegion(m.group(3)))
+          .build();
+    }
+    m = GCP_BUCKET_PATTERN.matcher(bucketUrl);
+    if (m.matches()) {
+      return builder.provider(Provider.GCP).bucketName(m.group(2)).build();
+    }
+    m = AZURE_BUCKET_PATTERN.matcher(bucketUrl);
+    if (m.matches()) {
+      return builder.provider(Provider.AZURE).bucketName(m.group(3)).build();
     }
-    return null;
+    return builder.build();
   }
 
-  /** Get bucket name from bucket URL. */
-  private static String getBucketName(String bucketUrl) {
-    Pattern p;
-    if (bucketUrl.matches(AWS_BUCKET_REGEX)) {
-      p = Pattern.compile(AWS_BUCKET_REGEX);
-      Matcher m = p.matcher(bucketUrl);
-      if (m.find()) {
-        return m.group(2);
-      }
-    } else if (bucketUrl.matches(GCP_BUCKET_REGEX)) {
-      p = Pattern.compile(GCP_BUCKET_REGEX);
-      Matcher m = p.matcher(bucketUrl);
-      if (m.find()) {
-        return m.group(2);
-      }
-    } else if(bucketUrl.matches(AZURE_BUCKET_REGEX)) {
-      p = Pattern.compile(AZURE_BUCKET_REGEX);
-      Matcher m = p.matcher(bucketUrl);
-      if (m.find()) {
-        return m.group(3);
-      }
+  /** Get the region from the region part of an AWS bucket url, e.g. "us-east-1.". */
+  private static String getAwsBucketRegion(String region) {
+    if (region == null || region.isBlank()) {
+      return null;
     }
-    return null;
+    return region.substring(0, region.length() - 1);
   }
 }
@@ -0,0 +1,210 @@
+package storage;
+
+import shared.ExpiringCache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Keeps the contents of small, frequently read files in memory. The cache is bounded by the total
+ * size of the cached files and entries expire after a time-to-live. Writes, copies and deletes
+ * through this storage invalidate the affected files, reads that overlap with them do not cache
+ * their result. Changes made by other clients become visible once the entry has expired.
+ */
+public class CachingStorage extends ForwardingStorage {
+
+  private final ExpiringCache<String, byte[]> cache;
+  private final Duration ttl;
+
+  /**
+   * @param delegate The storage the files are read from.
+   * @param maxBytes The maximum total size of the cached files. Larger files are not cached.
+   * @param ttl How long a cached file is served without reading it again.
+   */
+  public CachingStorage(Storage delegate, long maxBytes, Duration ttl) {
+    super(delegate);
+    this.cache = new ExpiringCache<>(maxBytes, data -> data.length);
+    this.ttl = ttl;
+  }
+
+  @Override
+  public byte[] read(String fileUrl) throws Exception {
+    return read(FileInfo.parse(fileUrl));
+  }
+
+  @Override
+  public byte[] read(FileInfo fileInfo) throws Exception {
+    // callers get their own copy, so they cannot modify the cached contents
+    return cache.get(fileInfo.getFileUrl(), ttl, () -> delegate.read(fileInfo)).clone();
+  }
+
+  @Override
+  public String write(byte[] data, String fileUrl) throws Exception {
+    return write(data, FileInfo.parse(fileUrl));
+  }
+
+  @Override
+  public String write(byte[] data, FileInfo fileInfo) throws Exception {
+    try {
+      return delegate.write(data, fileInfo);
+    } finally {
+      cache.invalidate(fileInfo.getFileUrl());
+    }
+  }
+
+  @Override
+  public OutputStream openWrite(String fileUrl) throws IOException {
+    return openWrite(FileInfo.parse(fileUrl));
+  }
+
+  @Override
+  public OutputStream openWrite(FileInfo fileInfo) throws IOException {
+    cache.invalidate(fileInfo.getFileUrl());
+    OutputStream out = delegate.openWrite(fileInfo);
+    // reads while the stream is open cache the previous contents, which are replaced on close
+    return new AbortableOutputStream(
+        out,
+        () -> {
+          try {
+            Abortable.abortOrClose(out);
+          } finally {
+            cache.invalidate(fileInfo.getFileUrl());
+          }
+        }) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          cache.invalidate(fileInfo.getFileUrl());
+        }
+      }
+    };
+  }
+
+  @Override
+  public WritableByteChannel openWriteChannel(String fileUrl) throws IOException {
+    String url = FileInfo.parse(fileUrl).getFileUrl();
+    cache.invalidate(url);
+    return new InvalidatingChannel(delegate.openWriteChannel(fileUrl), url);
+  }
+
+  @Override
+  public void copy(String sourceUrl, String targetUrl) throws IOException {
+    copy(FileInfo.parse(sourceUrl), FileInfo.parse(targetUrl));
+  }
+
+  @Override
+  public void copy(FileInfo source, FileInfo target) throws IOException {
+    try {
+      delegate.copy(source, target);
+    } finally {
+      cache.invalidate(target.getFileUrl());
+    }
+  }
+
+  @Override
+  public String upload(Path source, String fileUrl) throws IOException {
+    return upload(source, FileInfo.parse(fileUrl));
+  }
+
+  @Override
+  public String upload(Path source, FileInfo fileInfo) throws IOException {
+    try {
+      return delegate.upload(source, fileInfo);
+    } finally {
+      cache.invalidate(fileInfo.getFileUrl());
+    }
+  }
+
+  @Override
+  public boolean delete(String fileUrl) throws IOException {
+    return delete(FileInfo.parse(fileUrl));
+  }
+
+  @Override
+  public boolean delete(FileInfo fileInfo) throws IOException {
+    try {
+      return delegate.delete(fileInfo);
+    } finally {
+      cache.invalidate(fileInfo.getFileUrl());
+    }
+  }
+
+  @Override
+  public void deleteAll(List<String> fileUrls) throws IOException {
+    try {
+      delegate.deleteAll(fileUrls);
+    } finally {
+      for (String fileUrl : fileUrls) {
+        cache.invalidate(FileInfo.parse(fileUrl).getFileUrl());
+      }
+    }
+  }
+
+  /** Remove all files from the cache. */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  public long getHitCount() {
+    return cache.getHitCount();
+  }
+
+  public long getMissCount() {
+    return cache.getMissCount();
+  }
+
+  public long getEvictionCount() {
+    return cache.getEvictionCount();
+  }
+
+  /** The total size of the cached files in bytes. */
+  public long getCachedBytes() {
+    return cache.weight();
+  }
+
+  /** Invalidates the file once the channel is closed or aborted. */
+  private class InvalidatingChannel implements WritableByteChannel, Abortable {
+    private final WritableByteChannel channel;
+    private final String fileUrl;
+
+    private InvalidatingChannel(WritableByteChannel channel, String fileUrl) {
+      this.channel = channel;
+      this.fileUrl = fileUrl;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      return channel.write(src);
+    }
+
+    @Override
+    public boolean isOpen() {
+      return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        channel.close();
+      } finally {
+        cache.invalidate(fileUrl);
+      }
+    }
+
+    @Override
+    public void abort() throws IOException {
+      try {
+        Abortable.abortOrClose(channel);
+      } finally {
+        cache.invalidate(fileUrl);
+      }
+    }
+  }
+}
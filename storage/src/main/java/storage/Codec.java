@@ -0,0 +1,79 @@
+package storage;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression formats of {@link CompressingStorage}. The format of a file is recorded in its header
+ * by its id, which must never change once files were written with it.
+ */
+public enum Codec {
+  GZIP(1) {
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+      return new GZIPOutputStream(out, BUFFER_SIZE);
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+      return new GZIPInputStream(in, BUFFER_SIZE);
+    }
+  },
+  ZSTD(2) {
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+      return new ZstdOutputStream(out);
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+      return new ZstdInputStream(in);
+    }
+  },
+  LZ4(3) {
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+      return new LZ4FrameOutputStream(out);
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+      return new LZ4FrameInputStream(in);
+    }
+  };
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  final byte id;
+
+  Codec(int id) {
+    this.id = (byte) id;
+  }
+
+  /** Wrap the stream, so everything written to it is compressed. */
+  public abstract OutputStream compress(OutputStream out) throws IOException;
+
+  /** Wrap the stream, so everything read from it is decompressed. */
+  public abstract InputStream decompress(InputStream in) throws IOException;
+
+  /**
+   * @return The format with the given id.
+   * @throws IOException If there is no such format, e.g. the file was written by a newer version.
+   */
+  static Codec forId(byte id) throws IOException {
+    for (Codec codec : values()) {
+      if (codec.id == id) {
+        return codec;
+      }
+    }
+    throw new IOException("Unknown compression format " + id);
+  }
+}
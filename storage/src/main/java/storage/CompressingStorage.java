@@ -0,0 +1,188 @@
+package storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Compresses files on write and decompresses them on read, e.g. for transcripts or OCR results,
+ * which are highly compressible. Streams are compressed while they are transferred and are never
+ * held in memory as a whole.
+ *
+ * <p>Compressed files start with a short header that marks them and records their format. Only
+ * files with this header are decompressed, all other files, including files compressed by someone
+ * else such as .gz archives, are returned unchanged. Sizes reported by {@link #stat(String)} are
+ * the compressed sizes.
+ */
+public class CompressingStorage extends ForwardingStorage {
+
+  // a non-ASCII first byte keeps the header from matching text files, the last byte is the codec
+  private static final byte[] MARKER = {(byte) 0x89, 'C', 'O', 'R', 'E', 0x1a, 0x01};
+  private static final int HEADER_LENGTH = MARKER.length + 1;
+
+  private final Codec codec;
+
+  /**
+   * @param delegate The storage the compressed files are stored in.
+   * @param codec The format new files are compressed with. Files in any supported format are read.
+   */
+  public CompressingStorage(Storage delegate, Codec codec) {
+    super(delegate);
+    this.codec = codec;
+  }
+
+  @Override
+  public byte[] read(String fileUrl) throws Exception {
+    return decompress(delegate.read(fileUrl));
+  }
+
+  @Override
+  public byte[] read(FileInfo fileInfo) throws Exception {
+    return decompress(delegate.read(fileInfo));
+  }
+
+  @Override
+  public VersionedFile readIfChanged(String fileUrl, String version) throws Exception {
+    VersionedFile file = delegate.readIfChanged(fileUrl, version);
+    if (file == null) {
+      return null;
+    }
+    return new VersionedFile(decompress(file.getData()), file.getVersion());
+  }
+
+  @Override
+  public String write(byte[] data, String fileUrl) throws Exception {
+    return delegate.write(compress(data), fileUrl);
+  }
+
+  @Override
+  public String write(byte[] data, FileInfo fileInfo) throws Exception {
+    return delegate.write(compress(data), fileInfo);
+  }
+
+  @Override
+  public InputStream openRead(String fileUrl) throws IOException {
+    return decompress(delegate.openRead(fileUrl));
+  }
+
+  @Override
+  public InputStream openRead(FileInfo fileInfo) throws IOException {
+    return decompress(delegate.openRead(fileInfo));
+  }
+
+  @Override
+  public OutputStream openWrite(String fileUrl) throws IOException {
+    return compress(delegate.openWrite(fileUrl));
+  }
+
+  @Override
+  public OutputStream openWrite(FileInfo fileInfo) throws IOException {
+    return compress(delegate.openWrite(fileInfo));
+  }
+
+  @Override
+  public ReadableByteChannel openReadChannel(String fileUrl) throws IOException {
+    return Channels.newChannel(openRead(fileUrl));
+  }
+
+  @Override
+  public WritableByteChannel openWriteChannel(String fileUrl) throws IOException {
+    return new AbortableChannel(openWrite(fileUrl));
+  }
+
+  @Override
+  public void download(String fileUrl, Path target) throws IOException {
+    download(FileInfo.parse(fileUrl), target);
+  }
+
+  @Override
+  public void download(FileInfo fileInfo, Path target) throws IOException {
+    LocalFiles.replace(
+        target,
+        tmpFile -> {
+          try (InputStream in = openRead(fileInfo)) {
+            Files.copy(in, tmpFile);
+          }
+        });
+  }
+
+  @Override
+  public String upload(Path source, String fileUrl) throws IOException {
+    return upload(source, FileInfo.parse(fileUrl));
+  }
+
+  @Override
+  public String upload(Path source, FileInfo fileInfo) throws IOException {
+    // compress into a temporary file first, so the upload reports the version it created and a
+    // failure never publishes a truncated file
+    Path compressed = Files.createTempFile("core-", ".compressed");
+    try {
+      try (InputStream in = Channels.newInputStream(LocalFiles.openRead(source));
+          OutputStream out = compress(Files.newOutputStream(compressed))) {
+        in.transferTo(out);
+      }
+      return delegate.upload(compressed, fileInfo);
+    } finally {
+      Files.deleteIfExists(compressed);
+    }
+  }
+
+  /** Write the header and compress everything else, aborting discards the target stream. */
+  private OutputStream compress(OutputStream target) throws IOException {
+    try {
+      target.write(MARKER);
+      target.write(codec.id);
+      return new AbortableOutputStream(
+          codec.compress(target), () -> Abortable.abortOrClose(target));
+    } catch (IOException | RuntimeException e) {
+      Abortable.abortOrClose(target, e);
+      throw e;
+    }
+  }
+
+  private byte[] compress(byte[] data) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (OutputStream out = compress(compressed)) {
+      out.write(data);
+    }
+    return compressed.toByteArray();
+  }
+
+  private static byte[] decompress(byte[] data) throws IOException {
+    if (!hasMarker(data, data.length)) {
+      return data;
+    }
+    Codec format = Codec.forId(data[MARKER.length]);
+    try (InputStream in =
+        format.decompress(
+            new ByteArrayInputStream(data, HEADER_LENGTH, data.length - HEADER_LENGTH))) {
+      return in.readAllBytes();
+    }
+  }
+
+  private static InputStream decompress(InputStream in) throws IOException {
+    // peek at the first bytes to check for the header
+    PushbackInputStream pushback = new PushbackInputStream(in, HEADER_LENGTH);
+    byte[] header = new byte[HEADER_LENGTH];
+    int length = pushback.readNBytes(header, 0, header.length);
+    if (!hasMarker(header, length)) {
+      pushback.unread(header, 0, length);
+      return pushback;
+    }
+    return Codec.forId(header[MARKER.length]).decompress(pushback);
+  }
+
+  private static boolean hasMarker(byte[] header, int length) {
+    return length >= HEADER_LENGTH
+        && Arrays.equals(header, 0, MARKER.length, MARKER, 0, MARKER.length);
+  }
+}
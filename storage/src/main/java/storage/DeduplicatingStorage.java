@@ -0,0 +1,137 @@
+package storage;
+
+import shared.ExpiringCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Skips writes and uploads whose content is already stored at the destination. The MD5 hash of the
+ * content is compared to the file at the destination without downloading it:
+ *
+ * <ul>
+ *   <li>An index remembers the hash and version of every file written through this storage. The
+ *       version is the one returned by the write itself, so a concurrent write by someone else is
+ *       never attributed to this content. If the version of the destination is still the same, the
+ *       stored content is known.
+ *   <li>For files that were not written through this storage, the ETag is compared, which is the
+ *       MD5 hash of the content for objects uploaded to AWS with a single request.
+ * </ul>
+ */
+public class DeduplicatingStorage extends ForwardingStorage {
+
+  private static final int MAX_INDEX_SIZE = 100_000;
+  private static final Duration INDEX_TTL = Duration.ofHours(24);
+
+  // file url -> hash and version of the content written last
+  private final ExpiringCache<String, IndexEntry> index = new ExpiringCache<>(MAX_INDEX_SIZE);
+  private final AtomicLong skippedWrites = new AtomicLong();
+
+  public DeduplicatingStorage(Storage delegate) {
+    super(delegate);
+  }
+
+  @Override
+  public String write(byte[] data, String fileUrl) throws Exception {
+    return write(data, FileInfo.parse(fileUrl));
+  }
+
+  @Override
+  public String write(byte[] data, FileInfo fileInfo) throws Exception {
+    MessageDigest digest = md5();
+    digest.update(data);
+    String hash = toHex(digest.digest());
+    FileMetadata metadata = delegate.stat(fileInfo);
+    if (isStored(fileInfo, metadata, data.length, hash)) {
+      skippedWrites.incrementAndGet();
+      return metadata.getVersion();
+    }
+    return remember(fileInfo, hash, delegate.write(data, fileInfo));
+  }
+
+  @Override
+  public String upload(Path source, String fileUrl) throws IOException {
+    return upload(source, FileInfo.parse(fileUrl));
+  }
+
+  @Override
+  public String upload(Path source, FileInfo fileInfo) throws IOException {
+    // hash the file while streaming it, it is never held in memory as a whole
+    MessageDigest digest = md5();
+    long size = 0;
+    try (InputStream in = Channels.newInputStream(LocalFiles.openRead(source))) {
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        digest.update(buffer, 0, read);
+        size += read;
+      }
+    }
+    String hash = toHex(digest.digest());
+    FileMetadata metadata = delegate.stat(fileInfo);
+    if (isStored(fileInfo, metadata, size, hash)) {
+      skippedWrites.incrementAndGet();
+      return metadata.getVersion();
+    }
+    return remember(fileInfo, hash, delegate.upload(source, fileInfo));
+  }
+
+  /** The number of writes and uploads that were skipped, because the content was already stored. */
+  public long getSkippedWriteCount() {
+    return skippedWrites.get();
+  }
+
+  /** Check if the destination with the given metadata already contains content with the hash. */
+  private boolean isStored(FileInfo fileInfo, FileMetadata metadata, long size, String hash) {
+    if (metadata == null || metadata.getSize() != size) {
+      return false;
+    }
+    IndexEntry entry = index.getIfPresent(fileInfo.getFileUrl());
+    if (entry != null && entry.version.equals(metadata.getVersion())) {
+      return entry.hash.equals(hash);
+    }
+    // the ETag of an object uploaded to AWS with a single request is the quoted MD5 hash
+    return metadata.getVersion() != null
+        && metadata.getVersion().replace("\"", "").equalsIgnoreCase(hash);
+  }
+
+  /** Remember the hash of the content, which was stored at the destination with the version. */
+  private String remember(FileInfo fileInfo, String hash, String version) {
+    if (version != null) {
+      index.put(fileInfo.getFileUrl(), new IndexEntry(hash, version), INDEX_TTL);
+    }
+    return version;
+  }
+
+  private static MessageDigest md5() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder();
+    for (byte b : bytes) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  private static class IndexEntry {
+    private final String hash;
+    private final String version;
+
+    private IndexEntry(String hash, String version) {
+      this.hash = hash;
+      this.version = version;
+    }
+  }
+}
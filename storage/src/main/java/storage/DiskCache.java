@@ -0,0 +1,218 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache of cloud files on the local disk. Each entry stores the contents of a file
+ * together with its version (ETag or generation). Cached entries are revalidated with a
+ * conditional read on every access, so only changed files are transferred again. The least
+ * recently used entries are evicted once the cache exceeds its size limit.
+ *
+ * <p>Entries are kept as {@code <hash>.data} and {@code <hash>.version} files, where the hash is
+ * derived from the file url. Entries written by earlier processes are picked up on startup.
+ */
+class DiskCache {
+
+  private static final String DATA_SUFFIX = ".data";
+  private static final String VERSION_SUFFIX = ".version";
+
+  private final Path directory;
+  private final long maxBytes;
+  // access ordered, the first entry is the least recently used one
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes;
+
+  DiskCache(Path directory, long maxBytes) throws IOException {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    Files.createDirectories(directory);
+    load();
+  }
+
+  /**
+   * Read the file from the cache if the cached version is still current, otherwise read it from
+   * the provider and cache it.
+   */
+  byte[] read(FileInfo fileInfo, StorageProvider provider) throws Exception {
+    String key = key(fileInfo.getFileUrl());
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(key);
+    }
+    VersionedFile file = provider.readIfChanged(fileInfo, entry != null ? entry.version : null);
+    if (file == null) {
+      byte[] data = readEntry(key);
+      if (data != null) {
+        return data;
+      }
+      // the entry was evicted in the meantime
+      file = provider.readIfChanged(fileInfo, null);
+    }
+    if (file.getVersion() != null) {
+      store(key, file);
+    }
+    return file.getData();
+  }
+
+  /** Remove the cached entry of the file, e.g. because it has been overwritten or deleted. */
+  void invalidate(String fileUrl) {
+    String key = key(fileUrl);
+    synchronized (this) {
+      Entry entry = entries.remove(key);
+      if (entry != null) {
+        totalBytes -= entry.size;
+        deleteFiles(key);
+      }
+    }
+  }
+
+  private byte[] readEntry(String key) throws IOException {
+    try {
+      // large entries are memory mapped instead of read through an intermediate buffer
+      return LocalFiles.read(dataFile(key));
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  private void store(String key, VersionedFile file) throws IOException {
+    long size = file.getData().length;
+    if (size > maxBytes) {
+      return;
+    }
+    // the data is written to a temporary file first, so readers never see a partial entry
+    LocalFiles.AtomicWriteChannel out = LocalFiles.openWrite(dataFile(key));
+    try {
+      LocalFiles.writeFully(out, file.getData());
+      synchronized (this) {
+        // the version file publishes the entry, so it is removed before the data is replaced and
+        // written last. After a crash in between, the data file has no version and is dropped.
+        Entry previous = entries.remove(key);
+        totalBytes -= previous != null ? previous.size : 0;
+        boolean stored = false;
+        try {
+          Files.deleteIfExists(versionFile(key));
+          out.close();
+          LocalFiles.write(versionFile(key), file.getVersion().getBytes(StandardCharsets.UTF_8));
+          stored = true;
+        } finally {
+          if (!stored) {
+            deleteFiles(key);
+          }
+        }
+        entries.put(key, new Entry(file.getVersion(), size));
+        totalBytes += size;
+        evict();
+      }
+    } finally {
+      out.discard();
+    }
+  }
+
+  /** Evict the least recently used entries until the cache fits into its size limit. */
+  private void evict() {
+    Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+    while (totalBytes > maxBytes && iterator.hasNext()) {
+      Map.Entry<String, Entry> eldest = iterator.next();
+      iterator.remove();
+      totalBytes -= eldest.getValue().size;
+      deleteFiles(eldest.getKey());
+    }
+  }
+
+  /** Pick up the entries of earlier processes, oldest first. */
+  private void load() throws IOException {
+    List<Path> files;
+    try (Stream<Path> listing = Files.list(directory)) {
+      files = listing.collect(Collectors.toList());
+    }
+    List<Path> dataFiles = new ArrayList<>();
+    for (Path file : files) {
+      String fileName = file.getFileName().toString();
+      if (fileName.endsWith(DATA_SUFFIX)) {
+        dataFiles.add(file);
+      } else if (fileName.endsWith(".tmp")) {
+        // left behind by a process that was killed while storing an entry
+        Files.deleteIfExists(file);
+      }
+    }
+    dataFiles.sort(Comparator.comparing(DiskCache::lastModified));
+    for (Path dataFile : dataFiles) {
+      String fileName = dataFile.getFileName().toString();
+      String key = fileName.substring(0, fileName.length() - DATA_SUFFIX.length());
+      if (!Files.exists(versionFile(key))) {
+        Files.deleteIfExists(dataFile);
+        continue;
+      }
+      String version = Files.readString(versionFile(key), StandardCharsets.UTF_8);
+      long size = Files.size(dataFile);
+      entries.put(key, new Entry(version, size));
+      totalBytes += size;
+    }
+    evict();
+  }
+
+  private void deleteFiles(String key) {
+    try {
+      Files.deleteIfExists(dataFile(key));
+      Files.deleteIfExists(versionFile(key));
+    } catch (IOException e) {
+      // ignore, the file is overwritten when the entry is stored again
+    }
+  }
+
+  private Path dataFile(String key) {
+    return directory.resolve(key + DATA_SUFFIX);
+  }
+
+  private Path versionFile(String key) {
+    return directory.resolve(key + VERSION_SUFFIX);
+  }
+
+  private static long lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file).toMillis();
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  /** Derive a file name from the url. */
+  private static String key(String fileUrl) {
+    try {
+      byte[] hash =
+          MessageDigest.getInstance("SHA-256").digest(fileUrl.getBytes(StandardCharsets.UTF_8));
+      StringBuilder key = new StringBuilder();
+      for (byte b : hash) {
+        key.append(String.format("%02x", b));
+      }
+      return key.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static class Entry {
+    private final String version;
+    private final long size;
+
+    private Entry(String version, long size) {
+      this.version = version;
+      this.size = size;
+    }
+  }
+}
@@ -19,16 +19,21 @@ public class FileInfo {
   public static final String GCP_FILE_REGEX = "(http|https)://storage.cloud.google.com/(.*?)/(.*)";
   public static final String AZURE_FILE_REGEX = "(http|https)://(.*).blob.core.windows.net/([a-z0-9][a-z0-9\\-]*)/(.*)";
 
+  private static final Pattern AWS_FILE_PATTERN = Pattern.compile(AWS_FILE_REGEX);
+  private static final Pattern GCP_FILE_PATTERN = Pattern.compile(GCP_FILE_REGEX);
+  private static final Pattern AZURE_FILE_PATTERN = Pattern.compile(AZURE_FILE_REGEX);
+
   private boolean isLocal;
   private String fileName;
   private String fileUrl;
   private BucketInfo bucketInfo;
 
   public static FileInfo parse(String fileUrl) {
-    if (isLocalFile(fileUrl)) {
+    String fileName = getFileName(fileUrl);
+    if (fileName == null) {
       return parseLocalFileUrl(fileUrl);
     } else {
-      return parseCloudStorageFileUrl(fileUrl);
+      return parseCloudStorageFileUrl(fileUrl, fileName);
     }
   }
 
@@ -39,10 +44,9 @@ public class FileInfo {
     return FileInfo.builder().isLocal(true).fileUrl(absolutePath).fileName(fileName).build();
   }
 
-  private static FileInfo parseCloudStorageFileUrl(String fileUrl) {
-    String bucketUrl = getBucketUrl(fileUrl);
+  private static FileInfo parseCloudStorageFileUrl(String fileUrl, String fileName) {
+    String bucketUrl = fileUrl.substring(0, fileUrl.length() - fileName.length());
     BucketInfo bucketInfo = BucketInfo.parse(bucketUrl);
-    String fileName = getFileName(fileUrl);
     return FileInfo.builder()
         .isLocal(false)
         .fileName(fileName)
@@ -51,48 +55,20 @@ public class FileInfo {
         .build();
   }
 
-  /** Returns true if the file is not a cloud storage url. */
-  private static boolean isLocalFile(String fileUrl) {
-    if (!fileUrl.matches(AWS_FILE_REGEX)
-        && !fileUrl.matches(GCP_FILE_REGEX)
-        && !fileUrl.matches(AZURE_FILE_REGEX)) {
-      return true;
-    }
-    return false;
-  }
-
-  /** Get file key from file URL. */
+  /** Get file key from file URL, null if the file is not a cloud storage url. */
   private static String getFileName(String fileUrl) {
-    if (isLocalFile(fileUrl)) {
-      return null;
+    Matcher m = AWS_FILE_PATTERN.matcher(fileUrl);
+    if (m.matches()) {
+      return m.group(4);
     }
-    if (fileUrl.matches(AWS_FILE_REGEX)) {
-      Pattern p = Pattern.compile(AWS_FILE_REGEX);
-      Matcher m = p.matcher(fileUrl);
-      if (m.find()) {
-        return m.group(4);
-      }
-    } else if (fileUrl.matches(GCP_FILE_REGEX)) {
-      Pattern p = Pattern.compile(GCP_FILE_REGEX);
-      Matcher m = p.matcher(fileUrl);
-      if (m.find()) {
-        return m.group(3);
-      }
-    } else if (fileUrl.matches(AZURE_FILE_REGEX)) {
-      Pattern p = Pattern.compile(AZURE_FILE_REGEX);
-      Matcher m = p.matcher(fileUrl);
-      if (m.find()) {
-        return m.group(4);
-      }
+    m = GCP_FILE_PATTERN.matcher(fileUrl);
+    if (m.matches()) {
+      return m.group(3);
     }
-    return null;
-  }
-
-  private static String getBucketUrl(String fileUrl) {
-    if (isLocalFile(fileUrl)) {
-      return null;
+    m = AZURE_FILE_PATTERN.matcher(fileUrl);
+    if (m.matches()) {
+      return m.group(4);
     }
-    String fileName = getFileName(fileUrl);
-    return fileUrl.substring(0, fileUrl.length() - fileName.length());
+    return null;
   }
 }
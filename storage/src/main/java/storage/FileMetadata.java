@@ -0,0 +1,17 @@
+package storage;
+
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/** Metadata of a file, as returned by {@link Storage#stat(String)}. */
+@AllArgsConstructor
+@Getter
+@ToString
+public class FileMetadata {
+  private final long size;
+  // the ETag for AWS and Azure, the generation for GCP, size and modification time for local files
+  private final String version;
+  private final Instant lastModified;
+}
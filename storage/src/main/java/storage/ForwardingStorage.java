@@ -0,0 +1,171 @@
+package storage;
+
+import shared.Provider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A {@link Storage} that forwards all calls to another storage. Decorators extend this class and
+ * only override the operations they change.
+ */
+public abstract class ForwardingStorage implements Storage {
+
+  protected final Storage delegate;
+
+  protected ForwardingStorage(Storage delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public byte[] read(String fileUrl) throws Exception {
+    return delegate.read(fileUrl);
+  }
+
+  @Override
+  public byte[] read(FileInfo fileInfo) throws Exception {
+    return delegate.read(fileInfo);
+  }
+
+  @Override
+  public VersionedFile readIfChanged(String fileUrl, String version) throws Exception {
+    return delegate.readIfChanged(fileUrl, version);
+  }
+
+  @Override
+  public FileMetadata stat(String fileUrl) throws IOException {
+    return delegate.stat(fileUrl);
+  }
+
+  @Override
+  public FileMetadata stat(FileInfo fileInfo) throws IOException {
+    return delegate.stat(fileInfo);
+  }
+
+  @Override
+  public boolean exists(String fileUrl) throws IOException {
+    return delegate.exists(fileUrl);
+  }
+
+  @Override
+  public String write(byte[] data, String fileUrl) throws Exception {
+    return delegate.write(data, fileUrl);
+  }
+
+  @Override
+  public String write(byte[] data, FileInfo fileInfo) throws Exception {
+    return delegate.write(data, fileInfo);
+  }
+
+  @Override
+  public InputStream openRead(String fileUrl) throws IOException {
+    return delegate.openRead(fileUrl);
+  }
+
+  @Override
+  public InputStream openRead(FileInfo fileInfo) throws IOException {
+    return delegate.openRead(fileInfo);
+  }
+
+  @Override
+  public OutputStream openWrite(String fileUrl) throws IOException {
+    return delegate.openWrite(fileUrl);
+  }
+
+  @Override
+  public OutputStream openWrite(FileInfo fileInfo) throws IOException {
+    return delegate.openWrite(fileInfo);
+  }
+
+  @Override
+  public ReadableByteChannel openReadChannel(String fileUrl) throws IOException {
+    return delegate.openReadChannel(fileUrl);
+  }
+
+  @Override
+  public WritableByteChannel openWriteChannel(String fileUrl) throws IOException {
+    return delegate.openWriteChannel(fileUrl);
+  }
+
+  @Override
+  public void copy(String sourceUrl, String targetUrl) throws IOException {
+    delegate.copy(sourceUrl, targetUrl);
+  }
+
+  @Override
+  public void copy(FileInfo source, FileInfo target) throws IOException {
+    delegate.copy(source, target);
+  }
+
+  @Override
+  public void download(String fileUrl, Path target) throws IOException {
+    delegate.download(fileUrl, target);
+  }
+
+  @Override
+  public void download(FileInfo fileInfo, Path target) throws IOException {
+    delegate.download(fileInfo, target);
+  }
+
+  @Override
+  public String upload(Path source, String fileUrl) throws IOException {
+    return delegate.upload(source, fileUrl);
+  }
+
+  @Override
+  public String upload(Path source, FileInfo fileInfo) throws IOException {
+    return delegate.upload(source, fileInfo);
+  }
+
+  @Override
+  public boolean delete(String fileUrl) throws IOException {
+    return delegate.delete(fileUrl);
+  }
+
+  @Override
+  public boolean delete(FileInfo fileInfo) throws IOException {
+    return delegate.delete(fileInfo);
+  }
+
+  @Override
+  public void deleteAll(List<String> fileUrls) throws IOException {
+    delegate.deleteAll(fileUrls);
+  }
+
+  @Override
+  public String createBucket(Provider provider, String bucketName, String region) throws Exception {
+    return delegate.createBucket(provider, bucketName, region);
+  }
+
+  @Override
+  public String deleteBucket(Provider provider, String bucketName, String region)
+      throws IOException {
+    return delegate.deleteBucket(provider, bucketName, region);
+  }
+
+  @Override
+  public String getRegion(String bucketUrl) throws IOException {
+    return delegate.getRegion(bucketUrl);
+  }
+
+  @Override
+  public String getRegion(BucketInfo bucketInfo) throws IOException {
+    return delegate.getRegion(bucketInfo);
+  }
+
+  @Override
+  public List<String> listFiles(String bucketUrl) throws IOException {
+    return delegate.listFiles(bucketUrl);
+  }
+
+  @Override
+  public Stream<String> listFiles(String bucketUrl, String prefix) throws IOException {
+    return delegate.listFiles(bucketUrl, prefix);
+  }
+}
@@ -0,0 +1,231 @@
+package storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * Access to files on the local filesystem with {@link FileChannel}s. Data is transferred between
+ * channels without copying it through the heap where the platform allows it. Files are written to a temporary file next to the target first and renamed
+ * afterwards, so readers never see a partially written file.
+ */
+final class LocalFiles {
+
+  private LocalFiles() {}
+
+  /** Writes the contents of a file to the given path. */
+  @FunctionalInterface
+  interface PathWriter {
+    void write(Path file) throws IOException;
+  }
+
+  static byte[] read(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      // the result is a heap array, so the file is read into it directly instead of mapping it
+      byte[] data = new byte[RangedDownload.toArraySize(channel.size())];
+      ByteBuffer buffer = ByteBuffer.wrap(data);
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        // keep reading until the buffer is full or the end of the file is reached
+      }
+      return data;
+    }
+  }
+
+  static void write(Path path, byte[] data) throws IOException {
+    AtomicWriteChannel out = openWrite(path);
+    try {
+      writeFully(out, data);
+      out.close();
+    } finally {
+      out.discard();
+    }
+  }
+
+  static void writeFully(WritableByteChannel out, byte[] data) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+
+  /** Write the whole file to the channel. */
+  static void transfer(Path path, WritableByteChannel out) throws IOException {
+    if (out instanceof AtomicWriteChannel) {
+      // transfer between two file channels
+      out = ((AtomicWriteChannel) out).file;
+    }
+    try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = file.size();
+      long position = 0;
+      while (position < size) {
+        position += file.transferTo(position, size - position, out);
+      }
+    }
+  }
+
+  /** Copy a file, the data is transferred between the file channels. */
+  static void copy(Path source, Path target) throws IOException {
+    AtomicWriteChannel out = openWrite(target);
+    try {
+      transfer(source, out);
+      out.close();
+    } finally {
+      out.discard();
+    }
+  }
+
+  /**
+   * Replace a file with a file written by the writer, e.g. a download of a cloud SDK. The writer
+   * receives a temporary path that does not exist yet.
+   */
+  static void replace(Path target, PathWriter writer) throws IOException {
+    Path tmpFile = tmpFile(target);
+    try {
+      writer.write(tmpFile);
+      move(tmpFile, target);
+    } finally {
+      Files.deleteIfExists(tmpFile);
+    }
+  }
+
+  static FileChannel openRead(Path path) throws IOException {
+    return FileChannel.open(path, StandardOpenOption.READ);
+  }
+
+  /** Open a byte range of a file as stream, e.g. for the upload of a single part. */
+  static InputStream openRange(Path path, long offset, long length) throws IOException {
+    return new RangeInputStream(openRead(path), offset, length);
+  }
+
+  /** Open a file for writing. The file is replaced once the channel is closed. */
+  static AtomicWriteChannel openWrite(Path path) throws IOException {
+    Path tmpFile = tmpFile(path);
+    FileChannel file =
+        FileChannel.open(tmpFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    return new AtomicWriteChannel(file, tmpFile, path);
+  }
+
+  /** A unique file name next to the target, so the file can be renamed atomically. */
+  private static Path tmpFile(Path target) {
+    // the file is created with the default permissions, unlike Files.createTempFile
+    return target
+        .toAbsolutePath()
+        .resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+  }
+
+  private static void move(Path source, Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Writes to a temporary file, which is renamed to the target file on close. A writer that has
+   * failed should {@link #discard() discard} the channel instead. If a write of the channel itself
+   * has failed, close discards the temporary file as well, so the target file is never replaced
+   * with partial data.
+   */
+  static class AtomicWriteChannel implements WritableByteChannel, Abortable {
+    private final FileChannel file;
+    private final Path tmpFile;
+    private final Path target;
+    private boolean failed;
+
+    private AtomicWriteChannel(FileChannel file, Path tmpFile, Path target) {
+      this.file = file;
+      this.tmpFile = tmpFile;
+      this.target = target;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      try {
+        return file.write(src);
+      } catch (IOException | RuntimeException e) {
+        failed = true;
+        throw e;
+      }
+    }
+
+    @Override
+    public boolean isOpen() {
+      return file.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!file.isOpen()) {
+        return;
+      }
+      try {
+        file.close();
+        if (failed) {
+          throw new IOException("A write to " + target + " has failed, the file was not replaced.");
+        }
+        move(tmpFile, target);
+      } finally {
+        Files.deleteIfExists(tmpFile);
+      }
+    }
+
+    /** Delete the temporary file without replacing the target file. Does nothing after close. */
+    void discard() throws IOException {
+      file.close();
+      Files.deleteIfExists(tmpFile);
+    }
+
+    @Override
+    public void abort() throws IOException {
+      discard();
+    }
+  }
+
+  /** Reads a byte range of a file with positional reads. */
+  private static class RangeInputStream extends InputStream {
+    private final FileChannel file;
+    private final long end;
+    private long position;
+
+    private RangeInputStream(FileChannel file, long offset, long length) {
+      this.file = file;
+      this.position = offset;
+      this.end = offset + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (position >= end) {
+        return -1;
+      }
+      int read = file.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+      if (read > 0) {
+        position += read;
+      }
+      return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+      file.close();
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package storage;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over the items of a paginated listing. Pages are only requested when the items of the
+ * previous page have been consumed. With prefetching, the next page is requested in the background
+ * while the current page is being consumed, so at most two pages are held in memory.
+ */
+class PagedListing<P, T> implements Iterator<T> {
+
+  private final Iterator<P> pages;
+  private final Function<P, List<T>> items;
+  private final boolean prefetch;
+  private Iterator<T> current = Collections.emptyIterator();
+  private Future<P> nextPage;
+
+  private PagedListing(Iterator<P> pages, Function<P, List<T>> items, boolean prefetch) {
+    this.pages = pages;
+    this.items = items;
+    this.prefetch = prefetch;
+  }
+
+  /**
+   * Create a lazy stream over the items of all pages. Closing the stream cancels a pending
+   * prefetch.
+   *
+   * @param pages Iterator that requests the next page from the provider's API.
+   * @param items Extracts the items of a page.
+   * @param prefetch Whether the next page is requested in the background.
+   */
+  static <P, T> Stream<T> stream(
+      Iterator<P> pages, Function<P, List<T>> items, boolean prefetch) {
+    PagedListing<P, T> listing = new PagedListing<>(pages, items, prefetch);
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(
+                listing, Spliterator.ORDERED | Spliterator.NONNULL),
+            false)
+        .onClose(listing::cancel);
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!current.hasNext()) {
+      P page = takePage();
+      if (page == null) {
+        return false;
+      }
+      current = items.apply(page).iterator();
+    }
+    return true;
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return current.next();
+  }
+
+  private P takePage() {
+    P page = nextPage != null ? await(nextPage) : fetchPage();
+    nextPage = null;
+    if (page != null && prefetch) {
+      // the page iterator is only ever used by one thread at a time
+      nextPage = ParallelTransfer.executor().submit(this::fetchPage);
+    }
+    return page;
+  }
+
+  private P fetchPage() {
+    return pages.hasNext() ? pages.next() : null;
+  }
+
+  private P await(Future<P> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Listing was interrupted.");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Failed to list the next page.", e.getCause());
+    }
+  }
+
+  private void cancel() {
+    if (nextPage != null) {
+      nextPage.cancel(true);
+      nextPage = null;
+    }
+  }
+}
@@ -0,0 +1,214 @@
+package storage;
+
+import com.azure.core.exception.HttpResponseException;
+import com.google.cloud.BaseServiceException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+
+/**
+ * Runs the parts of a single transfer (e.g. the parts of a multipart upload) concurrently on a
+ * process-wide, bounded executor. At most {@code concurrency} parts of the transfer are in flight
+ * at the same time. Parts that fail with a transient error (I/O errors, throttling or server
+ * errors) are retried with exponential backoff, other errors fail the whole transfer at once.
+ */
+class ParallelTransfer<T> {
+
+  private static final int POOL_SIZE = 64;
+  private static final long INITIAL_BACKOFF_MILLIS = 200;
+  private static final ExecutorService EXECUTOR =
+      Executors.newFixedThreadPool(
+          POOL_SIZE,
+          runnable -> {
+            Thread thread = new Thread(runnable, "core-storage-transfer");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final int concurrency;
+  private final Semaphore permits;
+  private final int retries;
+  private final List<Future<T>> futures = new ArrayList<>();
+  private final AtomicReference<Exception> failure = new AtomicReference<>();
+  // threads currently running a part, interrupted on cancel
+  private final Set<Thread> workers = new HashSet<>();
+  private volatile boolean cancelled;
+
+  /** The shared executor, also used for other background work of the storage providers. */
+  static ExecutorService executor() {
+    return EXECUTOR;
+  }
+
+  ParallelTransfer(int concurrency, int retries) {
+    this.concurrency = Math.max(1, concurrency);
+    this.permits = new Semaphore(this.concurrency);
+    this.retries = Math.max(0, retries);
+  }
+
+  /**
+   * Submit the next part. Blocks while the maximum number of parts is in flight.
+   *
+   * @throws IOException If a previously submitted part has failed.
+   */
+  void submit(Callable<T> part) throws IOException {
+    submit(part, 1);
+  }
+
+  /**
+   * Submit the next part, which counts as {@code weight} parts against the concurrency, e.g. a
+   * part that is larger than usual. Blocks until enough parts have finished.
+   *
+   * @throws IOException If a previously submitted part has failed.
+   */
+  void submit(Callable<T> part, int weight) throws IOException {
+    int acquired = Math.max(1, Math.min(weight, concurrency));
+    try {
+      permits.acquire(acquired);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      cancel();
+      throw new IOException("Transfer was interrupted.", e);
+    }
+    throwIfFailed();
+    futures.add(
+        EXECUTOR.submit(
+            () -> {
+              synchronized (workers) {
+                workers.add(Thread.currentThread());
+              }
+              try {
+                return callWithRetries(part);
+              } catch (Exception e) {
+                failure.compareAndSet(null, e);
+                throw e;
+              } finally {
+                synchronized (workers) {
+                  workers.remove(Thread.currentThread());
+                  // a late cancel must not interrupt the next task of the pool thread
+                  Thread.interrupted();
+                }
+                permits.release(acquired);
+              }
+            }));
+  }
+
+  /**
+   * Wait for all submitted parts to finish.
+   *
+   * @return The results of the parts in the order they were submitted.
+   * @throws IOException If any part has failed. All remaining parts are cancelled.
+   */
+  List<T> await() throws IOException {
+    List<T> results = new ArrayList<>(futures.size());
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      cancel();
+      throw new IOException("Transfer was interrupted.", e);
+    } catch (ExecutionException | CancellationException e) {
+      cancel();
+      throwIfFailed();
+      throw new IOException("Transfer failed.", e);
+    }
+    return results;
+  }
+
+  /**
+   * Cancel all parts that have not finished yet. Parts that have not started are skipped and
+   * running parts are interrupted, but the call does not wait for them.
+   */
+  void cancel() {
+    cancelled = true;
+    synchronized (workers) {
+      for (Thread worker : workers) {
+        worker.interrupt();
+      }
+    }
+  }
+
+  /**
+   * Same as {@link #cancel()}, but waits until no part is running anymore, e.g. before the parts
+   * that have already been written are cleaned up.
+   */
+  void cancelAndWait() {
+    cancel();
+    for (Future<T> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException | CancellationException e) {
+        // the part has failed or was cancelled, either way it is no longer running
+      }
+    }
+  }
+
+  private T callWithRetries(Callable<T> part) throws Exception {
+    for (int attempt = 0; ; attempt++) {
+      if (cancelled || failure.get() != null) {
+        throw new CancellationException("The transfer was cancelled or another part has failed.");
+      }
+      try {
+        return part.call();
+      } catch (Exception e) {
+        if (attempt >= retries || !isRetryable(e)) {
+          throw e;
+        }
+        Thread.sleep(INITIAL_BACKOFF_MILLIS << attempt);
+      }
+    }
+  }
+
+  /**
+   * Check if an error is transient. Service errors with a status code decide by the code, others
+   * are transient if they were caused by an I/O error.
+   */
+  static boolean isRetryable(Throwable error) {
+    boolean ioError = false;
+    for (Throwable e = error; e != null; e = e.getCause()) {
+      int status = 0;
+      if (e instanceof SdkServiceException) {
+        if (((SdkServiceException) e).isThrottlingException()) {
+          return true;
+        }
+        status = ((SdkServiceException) e).statusCode();
+      } else if (e instanceof BaseServiceException) {
+        status = ((BaseServiceException) e).getCode();
+      } else if (e instanceof HttpResponseException
+          && ((HttpResponseException) e).getResponse() != null) {
+        status = ((HttpResponseException) e).getResponse().getStatusCode();
+      }
+      if (status > 0) {
+        return status == 429 || status >= 500;
+      }
+      ioError |= e instanceof IOException;
+      if (e.getCause() == e) {
+        break;
+      }
+    }
+    return ioError;
+  }
+
+  private void throwIfFailed() throws IOException {
+    Exception e = failure.get();
+    if (e != null) {
+      cancel();
+      throw e instanceof IOException ? (IOException) e : new IOException("Transfer failed.", e);
+    }
+  }
+}
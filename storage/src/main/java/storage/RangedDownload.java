@@ -0,0 +1,138 @@
+package storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import shared.Configuration;
+
+/**
+ * Downloads an object with concurrent byte-range requests into a preallocated array or a file. The
+ * ranges are fetched on the shared transfer executor with the configured part size and
+ * concurrency.
+ */
+class RangedDownload {
+
+  /** Reads a byte range of the object and writes it to the output stream. */
+  @FunctionalInterface
+  interface RangeReader {
+    void read(long offset, long length, OutputStream out) throws Exception;
+  }
+
+  /** Download the bytes from {@code start} up to the end of the array. */
+  static void intoArray(byte[] data, int start, RangeReader reader, Configuration configuration)
+      throws IOException {
+    ParallelTransfer<Void> transfer =
+        new ParallelTransfer<>(
+            configuration.getTransferConcurrency(), configuration.getTransferRetries());
+    int partSize = configuration.getDownloadPartSize();
+    // long arithmetic, the offset would overflow for arrays close to the maximum size
+    for (long offset = start; offset < data.length; offset += partSize) {
+      int partOffset = (int) offset;
+      int partLength = (int) Math.min(partSize, data.length - offset);
+      transfer.submit(
+          () -> {
+            // a retried part simply overwrites the same range
+            reader.read(partOffset, partLength, new ArrayOutputStream(data, partOffset, partLength));
+            return null;
+          });
+    }
+    transfer.await();
+  }
+
+  /**
+   * Download the bytes from {@code start} up to {@code size} into the file. Each part is written
+   * at its own position of the file, so the parts never pass through a shared buffer.
+   */
+  static void intoChannel(
+      FileChannel file, long start, long size, RangeReader reader, Configuration configuration)
+      throws IOException {
+    ParallelTransfer<Void> transfer =
+        new ParallelTransfer<>(
+            configuration.getTransferConcurrency(), configuration.getTransferRetries());
+    int partSize = configuration.getDownloadPartSize();
+    for (long offset = start; offset < size; offset += partSize) {
+      long partOffset = offset;
+      long partLength = Math.min(partSize, size - offset);
+      transfer.submit(
+          () -> {
+            // a retried part simply overwrites the same range
+            reader.read(partOffset, partLength, new ChannelOutputStream(file, partOffset, partLength));
+            return null;
+          });
+    }
+    transfer.await();
+  }
+
+  /** Parse the size of the whole object from a Content-Range header (bytes 0-99/1234). */
+  static long parseTotalSize(String contentRange) {
+    return Long.parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1).trim());
+  }
+
+  /** Check that an object of the given size fits into a byte array. */
+  static int toArraySize(long size) throws IOException {
+    if (size > Integer.MAX_VALUE - 8) {
+      throw new IOException("File is too large to be read into memory, use openRead instead.");
+    }
+    return (int) size;
+  }
+
+  /** Writes into a fixed range of an array. */
+  private static class ArrayOutputStream extends OutputStream {
+    private final byte[] data;
+    private final int end;
+    private int position;
+
+    private ArrayOutputStream(byte[] data, int offset, int length) {
+      this.data = data;
+      this.position = offset;
+      this.end = offset + length;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (position >= end) {
+        throw new IOException("Received more data than requested.");
+      }
+      data[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (position + len > end) {
+        throw new IOException("Received more data than requested.");
+      }
+      System.arraycopy(b, off, data, position, len);
+      position += len;
+    }
+  }
+
+  /** Writes into a fixed range of a file. */
+  private static class ChannelOutputStream extends OutputStream {
+    private final FileChannel file;
+    private final long end;
+    private long position;
+
+    private ChannelOutputStream(FileChannel file, long offset, long length) {
+      this.file = file;
+      this.position = offset;
+      this.end = offset + length;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (position + len > end) {
+        throw new IOException("Received more data than requested.");
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+      while (buffer.hasRemaining()) {
+        position += file.write(buffer, position);
+      }
+    }
+  }
+}
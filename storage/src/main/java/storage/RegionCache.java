@@ -0,0 +1,48 @@
+package storage;
+
+import java.time.Duration;
+import shared.ExpiringCache;
+import shared.Provider;
+
+/**
+ * Process-wide cache of bucket locations that had to be queried from the provider's API. It is
+ * shared by all storage providers, so the location of a bucket is looked up once per process and
+ * time-to-live.
+ */
+public class RegionCache {
+
+  private static final int MAX_SIZE = 10_000;
+  private static final RegionCache INSTANCE = new RegionCache();
+
+  private final ExpiringCache<String, String> cache = new ExpiringCache<>(MAX_SIZE);
+
+  public static RegionCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Return the cached location of a bucket or query it using the loader.
+   *
+   * @param provider The provider where the bucket is located.
+   * @param bucketName The bucket name. For Azure, the name of the storage account.
+   * @param ttl How long a queried location is cached.
+   * @param loader Queries the location from the provider's API.
+   */
+  public <E extends Exception> String getRegion(
+      Provider provider, String bucketName, Duration ttl, ExpiringCache.Loader<String, E> loader)
+      throws E {
+    return cache.get(provider + ":" + bucketName, ttl, loader);
+  }
+
+  public void invalidate(Provider provider, String bucketName) {
+    cache.invalidate(provider + ":" + bucketName);
+  }
+
+  public long getHitCount() {
+    return cache.getHitCount();
+  }
+
+  public long getMissCount() {
+    return cache.getMissCount();
+  }
+}
@@ -0,0 +1,143 @@
+package storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import shared.Configuration;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * Output stream that uploads to S3 with a multipart upload. Data is buffered until a part is full,
+ * then the part is uploaded in the background while the next one is filled. The part size grows
+ * with the number of parts, so large streams stay within the part limit of S3. Larger parts reduce
+ * the number of parts in flight, so at most concurrency times the configured part size is in
+ * flight, plus the part that is being filled. If the data fits into a single part, it is uploaded
+ * with a single put request when the stream is closed. A failed upload is aborted.
+ */
+class S3MultipartOutputStream extends OutputStream implements Abortable {
+
+  // the part size is doubled every 1000 parts, so large streams stay within the S3 limit of 10000
+  // parts. It grows up to the bytes allowed in flight, ~500 GiB with the default configuration.
+  private static final int MAX_PART_SIZE = 512 * 1024 * 1024;
+  private static final int PARTS_PER_SIZE = 1000;
+
+  private final S3Client s3;
+  private final String bucketName;
+  private final String key;
+  private final Configuration configuration;
+  private final int maxPartSize;
+  private byte[] buffer;
+  private int position;
+  private S3MultipartUpload upload;
+  private boolean closed;
+
+  S3MultipartOutputStream(
+      S3Client s3, String bucketName, String key, Configuration configuration) {
+    this.s3 = s3;
+    this.bucketName = bucketName;
+    this.key = key;
+    this.configuration = configuration;
+    this.buffer = new byte[configuration.getMultipartPartSize()];
+    // a single part may use all bytes allowed in flight, but not more
+    this.maxPartSize =
+        (int)
+            Math.min(
+                MAX_PART_SIZE,
+                Math.max(1, configuration.getTransferConcurrency())
+                    * (long) configuration.getMultipartPartSize());
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureOpen();
+    if (position == buffer.length) {
+      flushPart();
+    }
+    buffer[position++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    ensureOpen();
+    while (len > 0) {
+      if (position == buffer.length) {
+        flushPart();
+      }
+      int length = Math.min(len, buffer.length - position);
+      System.arraycopy(b, off, buffer, position, length);
+      position += length;
+      off += length;
+      len -= length;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (upload == null) {
+      // everything fits into a single part
+      try {
+        PutObjectRequest request = PutObjectRequest.builder().bucket(bucketName).key(key).build();
+        s3.putObject(request, RequestBody.fromByteBuffer(ByteBuffer.wrap(buffer, 0, position)));
+      } catch (SdkException e) {
+        throw new IOException("Failed to upload " + key + " to bucket " + bucketName, e);
+      }
+      return;
+    }
+    try {
+      if (position > 0) {
+        upload.uploadPart(buffer, 0, position);
+      }
+      upload.complete();
+    } catch (IOException | RuntimeException e) {
+      upload.abort();
+      throw e;
+    }
+  }
+
+  @Override
+  public void abort() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (upload != null) {
+      upload.abort();
+    }
+  }
+
+  private void flushPart() throws IOException {
+    try {
+      if (upload == null) {
+        upload = new S3MultipartUpload(s3, bucketName, key, configuration);
+        upload.start();
+      }
+      upload.uploadPart(buffer, 0, position);
+    } catch (IOException | RuntimeException e) {
+      closed = true;
+      if (upload != null) {
+        upload.abort();
+      }
+      throw e;
+    }
+    // the submitted buffer is owned by the upload until it completes
+    int partSize = buffer.length;
+    if (upload.getPartCount() % PARTS_PER_SIZE == 0) {
+      partSize = (int) Math.min(maxPartSize, 2L * partSize);
+    }
+    buffer = new byte[partSize];
+    position = 0;
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream is closed.");
+    }
+  }
+}
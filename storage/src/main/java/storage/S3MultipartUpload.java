@@ -0,0 +1,274 @@
+package storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import shared.Configuration;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+/**
+ * A multipart upload to S3. Parts are uploaded concurrently and retried individually. The upload
+ * is either completed as a whole or aborted, so a partially uploaded object never becomes visible.
+ * Parts can either be uploaded from memory, read from a local file or copied server-side from an
+ * existing object.
+ */
+class S3MultipartUpload {
+
+  static final int MAX_PARTS = 10_000;
+  private static final long COPY_PART_SIZE = 512L * 1024 * 1024;
+
+  private final S3Client s3;
+  private final String bucketName;
+  private final String key;
+  private final ParallelTransfer<CompletedPart> transfer;
+  private final int partSize;
+  private String uploadId;
+  private int partCount;
+
+  S3MultipartUpload(S3Client s3, String bucketName, String key, Configuration configuration) {
+    this.s3 = s3;
+    this.bucketName = bucketName;
+    this.key = key;
+    this.transfer =
+        new ParallelTransfer<>(
+            configuration.getTransferConcurrency(), configuration.getTransferRetries());
+    this.partSize = configuration.getMultipartPartSize();
+  }
+
+  /**
+   * Upload a byte array with a multipart upload.
+   *
+   * @return The ETag of the uploaded object.
+   */
+  static String upload(
+      S3Client s3, String bucketName, String key, byte[] data, Configuration configuration)
+      throws IOException {
+    // S3 allows at most 10000 parts per upload
+    int partSize =
+        (int)
+            Math.max(
+                configuration.getMultipartPartSize(),
+                (data.length + (long) MAX_PARTS - 1) / MAX_PARTS);
+    S3MultipartUpload upload = new S3MultipartUpload(s3, bucketName, key, configuration);
+    upload.start();
+    try {
+      // long arithmetic, the offset would overflow for arrays close to the maximum size
+      for (long offset = 0; offset < data.length; offset += partSize) {
+        upload.uploadPart(data, (int) offset, (int) Math.min(partSize, data.length - offset));
+      }
+      return upload.complete();
+    } catch (IOException | RuntimeException e) {
+      upload.abort();
+      throw e;
+    }
+  }
+
+  /**
+   * Upload a local file with a multipart upload. Each part is read from the file when it is sent.
+   *
+   * @return The ETag of the uploaded object.
+   */
+  static String upload(
+      S3Client s3, String bucketName, String key, Path file, long size, Configuration configuration)
+      throws IOException {
+    long partSize = Math.max(configuration.getMultipartPartSize(), (size + MAX_PARTS - 1) / MAX_PARTS);
+    S3MultipartUpload upload = new S3MultipartUpload(s3, bucketName, key, configuration);
+    upload.start();
+    try {
+      for (long offset = 0; offset < size; offset += partSize) {
+        upload.uploadPart(file, offset, Math.min(partSize, size - offset));
+      }
+      return upload.complete();
+    } catch (IOException | RuntimeException e) {
+      upload.abort();
+      throw e;
+    }
+  }
+
+  /**
+   * Copy an object with a multipart upload of concurrent part copies. This is necessary for objects
+   * larger than 5 GiB, which cannot be copied with a single request.
+   */
+  static void copy(
+      S3Client s3,
+      String sourceBucketName,
+      String sourceKey,
+      String sourceETag,
+      long size,
+      String bucketName,
+      String key,
+      Configuration configuration)
+      throws IOException {
+    long partSize = Math.max(COPY_PART_SIZE, (size + MAX_PARTS - 1) / MAX_PARTS);
+    S3MultipartUpload upload = new S3MultipartUpload(s3, bucketName, key, configuration);
+    upload.start();
+    try {
+      for (long offset = 0; offset < size; offset += partSize) {
+        long lastByte = Math.min(offset + partSize, size) - 1;
+        upload.copyPart(sourceBucketName, sourceKey, sourceETag, offset, lastByte);
+      }
+      upload.complete();
+    } catch (IOException | RuntimeException e) {
+      upload.abort();
+      throw e;
+    }
+  }
+
+  void start() throws IOException {
+    try {
+      CreateMultipartUploadRequest request =
+          CreateMultipartUploadRequest.builder().bucket(bucketName).key(key).build();
+      uploadId = s3.createMultipartUpload(request).uploadId();
+    } catch (SdkException e) {
+      throw new IOException("Failed to start upload of " + key + " to bucket " + bucketName, e);
+    }
+  }
+
+  /**
+   * Submit the next part. The array must not be modified until the upload has completed. Blocks
+   * while the configured number of parts is in flight, parts larger than the configured part size
+   * count as several parts, so the bytes in flight stay bounded.
+   */
+  void uploadPart(byte[] data, int offset, int length) throws IOException {
+    int partNumber = nextPartNumber();
+    int weight = (int) ((length + (long) partSize - 1) / partSize);
+    transfer.submit(
+        () -> {
+          UploadPartRequest request =
+              UploadPartRequest.builder()
+                  .bucket(bucketName)
+                  .key(key)
+                  .uploadId(uploadId)
+                  .partNumber(partNumber)
+                  .build();
+          RequestBody body =
+              RequestBody.fromContentProvider(
+                  () -> new ByteArrayInputStream(data, offset, length),
+                  length,
+                  "application/octet-stream");
+          UploadPartResponse response = s3.uploadPart(request, body);
+          return CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build();
+        },
+        weight);
+  }
+
+  /**
+   * Submit the next part as a byte range of a local file. Blocks while the configured number of
+   * parts is in flight.
+   */
+  void uploadPart(Path file, long offset, long length) throws IOException {
+    int partNumber = nextPartNumber();
+    transfer.submit(
+        () -> {
+          UploadPartRequest request =
+              UploadPartRequest.builder()
+                  .bucket(bucketName)
+                  .key(key)
+                  .uploadId(uploadId)
+                  .partNumber(partNumber)
+                  .build();
+          RequestBody body =
+              RequestBody.fromContentProvider(
+                  () -> {
+                    try {
+                      return LocalFiles.openRange(file, offset, length);
+                    } catch (IOException e) {
+                      throw new UncheckedIOException(e);
+                    }
+                  },
+                  length,
+                  "application/octet-stream");
+          UploadPartResponse response = s3.uploadPart(request, body);
+          return CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build();
+        });
+  }
+
+  /**
+   * Submit the next part as a copy of a byte range of another object. Blocks while the configured
+   * number of parts is in flight.
+   */
+  void copyPart(
+      String sourceBucketName, String sourceKey, String sourceETag, long firstByte, long lastByte)
+      throws IOException {
+    int partNumber = nextPartNumber();
+    transfer.submit(
+        () -> {
+          UploadPartCopyRequest request =
+              UploadPartCopyRequest.builder()
+                  .sourceBucket(sourceBucketName)
+                  .sourceKey(sourceKey)
+                  .copySourceIfMatch(sourceETag)
+                  .copySourceRange("bytes=" + firstByte + "-" + lastByte)
+                  .destinationBucket(bucketName)
+                  .destinationKey(key)
+                  .uploadId(uploadId)
+                  .partNumber(partNumber)
+                  .build();
+          UploadPartCopyResponse response = s3.uploadPartCopy(request);
+          return CompletedPart.builder()
+              .partNumber(partNumber)
+              .eTag(response.copyPartResult().eTag())
+              .build();
+        });
+  }
+
+  /** The number of parts submitted so far. */
+  int getPartCount() {
+    return partCount;
+  }
+
+  private int nextPartNumber() throws IOException {
+    if (partCount >= MAX_PARTS) {
+      throw new IOException(
+          "Upload of " + key + " exceeds the S3 limit of " + MAX_PARTS + " parts.");
+    }
+    return ++partCount;
+  }
+
+  /**
+   * Wait for all parts and complete the upload.
+   *
+   * @return The ETag of the completed object.
+   */
+  String complete() throws IOException {
+    List<CompletedPart> parts = transfer.await();
+    try {
+      CompleteMultipartUploadRequest request =
+          CompleteMultipartUploadRequest.builder()
+              .bucket(bucketName)
+              .key(key)
+              .uploadId(uploadId)
+              .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+              .build();
+      return s3.completeMultipartUpload(request).eTag();
+    } catch (SdkException e) {
+      throw new IOException("Failed to complete upload of " + key + " to bucket " + bucketName, e);
+    }
+  }
+
+  /**
+   * Cancel all pending parts and abort the upload. Waits for running parts first, a part that
+   * finished after the abort would be stored without ever being deleted.
+   */
+  void abort() {
+    transfer.cancelAndWait();
+    if (uploadId == null) {
+      return;
+    }
+    try {
+      s3.abortMultipartUpload(
+          AbortMultipartUploadRequest.builder()
+              .bucket(bucketName)
+              .key(key)
+              .uploadId(uploadId)
+              .build());
+    } catch (SdkException e) {
+      // nothing left to do, the incomplete upload stays until it is aborted by a lifecycle rule
+    }
+  }
+}
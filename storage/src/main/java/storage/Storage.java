@@ -3,7 +3,13 @@ package storage;
 import shared.Provider;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface Storage {
 
@@ -17,6 +23,38 @@ public interface Storage {
    */
   byte[] read(String fileUrl) throws Exception;
 
+  /** Same as {@link #read(String)}, but takes an already parsed url. */
+  byte[] read(FileInfo fileInfo) throws Exception;
+
+  /**
+   * Read a file only if it has changed. Unchanged files are not transferred, the version is
+   * compared by the provider.
+   *
+   * @param fileUrl The url of the file to read. Can point to the local filesystem, AWS S3, Google
+   *     Cloud Storage or Azure Blob Storage.
+   * @param version The version the caller already has, e.g. from {@link FileMetadata#getVersion()}
+   *     or a previous read. Null reads the file unconditionally.
+   * @throws Exception If the file does not exist or if the url can not be parsed.
+   * @return The contents and the current version of the file, or null if the file has not changed.
+   */
+  VersionedFile readIfChanged(String fileUrl, String version) throws Exception;
+
+  /**
+   * Retrieve the size, version and modification time of a file without transferring its contents.
+   *
+   * @param fileUrl The url of the file. Can point to the local filesystem, AWS S3, Google Cloud
+   *     Storage or Azure Blob Storage.
+   * @throws IOException If the url can not be parsed.
+   * @return The metadata of the file, or null if the file does not exist.
+   */
+  FileMetadata stat(String fileUrl) throws IOException;
+
+  /** Same as {@link #stat(String)}, but takes an already parsed url. */
+  FileMetadata stat(FileInfo fileInfo) throws IOException;
+
+  /** Check if a file exists without transferring its contents. */
+  boolean exists(String fileUrl) throws IOException;
+
   /**
    * Write data to a file. Creates a new file if it does not exist and overwrites a file if it
    * already exists.
@@ -24,9 +62,97 @@ public interface Storage {
    * @param data The content that should be written to the file as byte array.
    * @param fileUrl The url of the file to read. Can point to the local filesystem, AWS S3, Google
    *     Cloud Storage or Azure Blob Storage.
+   * @return The version of the written file, as reported by {@link FileMetadata#getVersion()}.
    * @throws Exception If the url can not be parsed.
    */
-  void write(byte[] data, String fileUrl) throws Exception;
+  String write(byte[] data, String fileUrl) throws Exception;
+
+  /** Same as {@link #write(byte[], String)}, but takes an already parsed url. */
+  String write(byte[] data, FileInfo fileInfo) throws Exception;
+
+  /**
+   * Open a file for reading. The contents are streamed from the storage backend and are never held
+   * in memory as a whole. The caller is responsible for closing the stream.
+   *
+   * @param fileUrl The url of the file to read. Can point to the local filesystem, AWS S3, Google
+   *     Cloud Storage or Azure Blob Storage.
+   * @throws IOException If the file does not exist or if the url can not be parsed.
+   * @return A stream of the file contents.
+   */
+  InputStream openRead(String fileUrl) throws IOException;
+
+  /** Same as {@link #openRead(String)}, but takes an already parsed url. */
+  InputStream openRead(FileInfo fileInfo) throws IOException;
+
+  /**
+   * Open a file for writing. Creates a new file if it does not exist and overwrites a file if it
+   * already exists. The data is streamed to the storage backend with bounded memory. The file is
+   * complete once the stream has been closed. The stream implements {@link Abortable}, a writer
+   * that fails should abort it instead of closing it, so the file is not replaced with partial data.
+   *
+   * @param fileUrl The url of the file to write. Can point to the local filesystem, AWS S3, Google
+   *     Cloud Storage or Azure Blob Storage.
+   * @throws IOException If the url can not be parsed.
+   * @return A stream that writes to the file.
+   */
+  OutputStream openWrite(String fileUrl) throws IOException;
+
+  /** Same as {@link #openWrite(String)}, but takes an already parsed url. */
+  OutputStream openWrite(FileInfo fileInfo) throws IOException;
+
+  /** Same as {@link #openRead(String)}, but returns a channel. */
+  ReadableByteChannel openReadChannel(String fileUrl) throws IOException;
+
+  /** Same as {@link #openWrite(String)}, but returns a channel, which is {@link Abortable} too. */
+  WritableByteChannel openWriteChannel(String fileUrl) throws IOException;
+
+  /**
+   * Copy a file. Creates the target file if it does not exist and overwrites it if it already
+   * exists. If source and target are stored with the same cloud provider, the file is copied
+   * server-side. Otherwise, the contents are streamed from the source to the target without being
+   * held in memory as a whole.
+   *
+   * @param sourceUrl The url of the file to copy. Can point to the local filesystem, AWS S3, Google
+   *     Cloud Storage or Azure Blob Storage.
+   * @param targetUrl The url of the copy. Can point to the local filesystem, AWS S3, Google Cloud
+   *     Storage or Azure Blob Storage.
+   * @throws IOException If the source file does not exist or if a url can not be parsed.
+   */
+  void copy(String sourceUrl, String targetUrl) throws IOException;
+
+  /** Same as {@link #copy(String, String)}, but takes already parsed urls. */
+  void copy(FileInfo source, FileInfo target) throws IOException;
+
+  /**
+   * Download a file to the local filesystem. The contents are streamed to the target file and are
+   * never held in memory as a whole. Large files are downloaded in concurrent parts. The target
+   * file is replaced once the download is complete.
+   *
+   * @param fileUrl The url of the file to download. Can point to the local filesystem, AWS S3,
+   *     Google Cloud Storage or Azure Blob Storage.
+   * @param target The local file the contents are written to.
+   * @throws IOException If the file does not exist or if the url can not be parsed.
+   */
+  void download(String fileUrl, Path target) throws IOException;
+
+  /** Same as {@link #download(String, Path)}, but takes an already parsed url. */
+  void download(FileInfo fileInfo, Path target) throws IOException;
+
+  /**
+   * Upload a local file. Creates the file if it does not exist and overwrites it if it already
+   * exists. The contents are read from the source file as they are sent and are never held in
+   * memory as a whole. Large files are uploaded in concurrent parts.
+   *
+   * @param source The local file to upload.
+   * @param fileUrl The url of the uploaded file. Can point to the local filesystem, AWS S3, Google
+   *     Cloud Storage or Azure Blob Storage.
+   * @return The version of the uploaded file, as reported by {@link FileMetadata#getVersion()}.
+   * @throws IOException If the source file does not exist or if the url can not be parsed.
+   */
+  String upload(Path source, String fileUrl) throws IOException;
+
+  /** Same as {@link #upload(Path, String)}, but takes an already parsed url. */
+  String upload(Path source, FileInfo fileInfo) throws IOException;
 
   /**
    * Delete a file.
@@ -38,6 +164,19 @@ public interface Storage {
    */
   boolean delete(String fileUrl) throws IOException;
 
+  /** Same as {@link #delete(String)}, but takes an already parsed url. */
+  boolean delete(FileInfo fileInfo) throws IOException;
+
+  /**
+   * Delete multiple files. Files in the same bucket are deleted together with batched requests.
+   * Files that do not exist are ignored.
+   *
+   * @param fileUrls The urls of the files to delete. Can point to the local filesystem, AWS S3,
+   *     Google Cloud Storage or Azure Blob Storage.
+   * @throws IOException If a url can not be parsed or if a file could not be deleted.
+   */
+  void deleteAll(List<String> fileUrls) throws IOException;
+
   /**
    * Create a new bucket.
    *
@@ -74,5 +213,23 @@ public interface Storage {
    */
   String getRegion(String bucketUrl) throws IOException;
 
+  /**
+   * Same as {@link #getRegion(String)}, but takes an already parsed url. The region is attached to
+   * the bucket info, so it is only resolved once per request.
+   */
+  String getRegion(BucketInfo bucketInfo) throws IOException;
+
   List<String> listFiles(String bucketUrl) throws IOException;
+
+  /**
+   * List the files of a bucket lazily. Pages of the listing are requested from the provider while
+   * the stream is consumed, so buckets of any size can be scanned with bounded memory. The stream
+   * should be closed if it is not consumed completely.
+   *
+   * @param bucketUrl The url of the bucket with trailing slash at the end.
+   * @param prefix Only files whose name starts with the prefix are listed, null lists all files.
+   * @throws IOException If the bucket url can not be parsed.
+   * @return A stream of the names of the files in the bucket.
+   */
+  Stream<String> listFiles(String bucketUrl, String prefix) throws IOException;
 }
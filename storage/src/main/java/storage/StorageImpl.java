@@ -5,15 +5,36 @@ import shared.Credentials;
 import shared.Provider;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class StorageImpl implements Storage {
 
   private final Credentials credentials;
   private final Configuration configuration;
+  private final StorageProviderFactory factory;
+  // one provider per cloud, created on first use and shared by all threads
+  private final Map<Provider, StorageProvider> providers = new ConcurrentHashMap<>();
+  // null, if cloud files are not cached on the local disk
+  private final DiskCache diskCache;
 
   public StorageImpl(Credentials credentials) {
     this(credentials, Configuration.builder().build());
@@ -22,57 +43,292 @@ public class StorageImpl implements Storage {
   public StorageImpl(Credentials credentials, Configuration configuration) {
     this.credentials = credentials;
     this.configuration = configuration;
+    this.factory = new StorageProviderFactoryImpl(credentials, configuration);
+    this.diskCache = createDiskCache(configuration);
+  }
+
+  private static DiskCache createDiskCache(Configuration configuration) {
+    if (configuration.getDiskCacheDirectory() == null) {
+      return null;
+    }
+    try {
+      return new DiskCache(
+          Path.of(configuration.getDiskCacheDirectory()), configuration.getDiskCacheMaxBytes());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Disk cache could not be initialized.", e);
+    }
   }
 
   @Override
   public byte[] read(String fileUrl) throws Exception {
+    return read(FileInfo.parse(fileUrl));
+  }
+
+  @Override
+  public byte[] read(FileInfo fileInfo) throws Exception {
+    if (fileInfo.isLocal()) {
+      // file is stored on the local filesystem
+      return LocalFiles.read(Path.of(fileInfo.getFileUrl()));
+    }
+    // file is stored in cloud storage
+    StorageProvider provider = getStorageProvider(fileInfo.getBucketInfo().getProvider());
+    if (diskCache != null) {
+      return diskCache.read(fileInfo, provider);
+    }
+    return provider.read(fileInfo);
+  }
+
+  @Override
+  public VersionedFile readIfChanged(String fileUrl, String version) throws Exception {
     FileInfo fileInfo = FileInfo.parse(fileUrl);
     if (fileInfo.isLocal()) {
       // file is stored on the local filesystem
-      try(FileInputStream in = new FileInputStream(fileUrl)) {
-        return in.readAllBytes();
+      FileMetadata metadata = stat(fileInfo);
+      if (metadata == null) {
+        throw new NoSuchFileException(fileInfo.getFileUrl());
       }
+      if (metadata.getVersion().equals(version)) {
+        return null;
+      }
+      byte[] data = LocalFiles.read(Path.of(fileInfo.getFileUrl()));
+      return new VersionedFile(data, metadata.getVersion());
     }
     // file is stored in cloud storage
-    StorageProviderFactory factory = new StorageProviderFactoryImpl(credentials, configuration);
-    StorageProvider provider = factory.getStorageProvider(fileInfo);
-    return provider.read(fileUrl);
+    StorageProvider provider = getStorageProvider(fileInfo.getBucketInfo().getProvider());
+    return provider.readIfChanged(fileInfo, version);
+  }
+
+  @Override
+  public FileMetadata stat(String fileUrl) throws IOException {
+    return stat(FileInfo.parse(fileUrl));
+  }
+
+  @Override
+  public FileMetadata stat(FileInfo fileInfo) throws IOException {
+    if (fileInfo.isLocal()) {
+      // file is stored on the local filesystem
+      BasicFileAttributes attributes;
+      try {
+        attributes = Files.readAttributes(Path.of(fileInfo.getFileUrl()), BasicFileAttributes.class);
+      } catch (NoSuchFileException e) {
+        return null;
+      }
+      Instant lastModified = attributes.lastModifiedTime().toInstant();
+      // local files have no version, size and modification time change with every write
+      String version = attributes.size() + "-" + lastModified;
+      return new FileMetadata(attributes.size(), version, lastModified);
+    }
+    // file is stored in cloud storage
+    StorageProvider provider = getStorageProvider(fileInfo.getBucketInfo().getProvider());
+    return provider.stat(fileInfo);
+  }
+
+  @Override
+  public boolean exists(String fileUrl) throws IOException {
+    return stat(fileUrl) != null;
   }
 
   @Override
-  public void write(byte[] data, String fileUrl) throws Exception {
+  public String write(byte[] data, String fileUrl) throws Exception {
+    return write(data, FileInfo.parse(fileUrl));
+  }
+
+  @Override
+  public String write(byte[] data, FileInfo fileInfo) throws Exception {
+    if (fileInfo.isLocal()) {
+      // file is stored on the local filesystem
+      LocalFiles.write(Path.of(fileInfo.getFileUrl()), data);
+      // local writes have no response, the version is read from the file attributes
+      return stat(fileInfo).getVersion();
+    }
+    // file is stored in cloud storage
+    invalidateCached(fileInfo);
+    StorageProvider provider = getStorageProvider(fileInfo.getBucketInfo().getProvider());
+    return provider.write(data, fileInfo);
+  }
+
+  @Override
+  public InputStream openRead(String fileUrl) throws IOException {
+    return openRead(FileInfo.parse(fileUrl));
+  }
+
+  @Override
+  public InputStream openRead(FileInfo fileInfo) throws IOException {
+    if (fileInfo.isLocal()) {
+      // file is stored on the local filesystem
+      return Channels.newInputStream(LocalFiles.openRead(Path.of(fileInfo.getFileUrl())));
+    }
+    // file is stored in cloud storage
+    StorageProvider provider = getStorageProvider(fileInfo.getBucketInfo().getProvider());
+    return provider.openRead(fileInfo);
+  }
+
+  @Override
+  public OutputStream openWrite(String fileUrl) throws IOException {
+    return openWrite(FileInfo.parse(fileUrl));
+  }
+
+  @Override
+  public OutputStream openWrite(FileInfo fileInfo) throws IOException {
+    if (fileInfo.isLocal()) {
+      // file is stored on the local filesystem, it is only replaced if the stream is closed
+      LocalFiles.AtomicWriteChannel channel = LocalFiles.openWrite(Path.of(fileInfo.getFileUrl()));
+      return new AbortableOutputStream(Channels.newOutputStream(channel), channel::discard);
+    }
+    // file is stored in cloud storage
+    invalidateCached(fileInfo);
+    StorageProvider provider = getStorageProvider(fileInfo.getBucketInfo().getProvider());
+    return provider.openWrite(fileInfo);
+  }
+
+  @Override
+  public ReadableByteChannel openReadChannel(String fileUrl) throws IOException {
     FileInfo fileInfo = FileInfo.parse(fileUrl);
     if (fileInfo.isLocal()) {
       // file is stored on the local filesystem
-      try(FileOutputStream out = new FileOutputStream(fileUrl)) {
-        out.write(data);
+      return LocalFiles.openRead(Path.of(fileInfo.getFileUrl()));
+    }
+    // file is stored in cloud storage
+    StorageProvider provider = getStorageProvider(fileInfo.getBucketInfo().getProvider());
+    return Channels.newChannel(provider.openRead(fileInfo));
+  }
+
+  @Override
+  public WritableByteChannel openWriteChannel(String fileUrl) throws IOException {
+    FileInfo fileInfo = FileInfo.parse(fileUrl);
+    if (fileInfo.isLocal()) {
+      // file is stored on the local filesystem
+      return LocalFiles.openWrite(Path.of(fileInfo.getFileUrl()));
+    }
+    // file is stored in cloud storage
+    invalidateCached(fileInfo);
+    StorageProvider provider = getStorageProvider(fileInfo.getBucketInfo().getProvider());
+    // the channel can be aborted like the stream it writes to
+    return new AbortableChannel(provider.openWrite(fileInfo));
+  }
+
+  @Override
+  public void copy(String sourceUrl, String targetUrl) throws IOException {
+    copy(FileInfo.parse(sourceUrl), FileInfo.parse(targetUrl));
+  }
+
+  @Override
+  public void copy(FileInfo source, FileInfo target) throws IOException {
+    invalidateCached(target);
+    if (!source.isLocal()
+        && !target.isLocal()
+        && source.getBucketInfo().getProvider() == target.getBucketInfo().getProvider()) {
+      // copy server-side within the same cloud
+      StorageProvider provider = getStorageProvider(source.getBucketInfo().getProvider());
+      provider.copy(source, target);
+      return;
+    }
+    if (source.isLocal()) {
+      upload(Path.of(source.getFileUrl()), target);
+      return;
+    }
+    if (target.isLocal()) {
+      download(source, Path.of(target.getFileUrl()));
+      return;
+    }
+    // stream the file from one cloud to the other
+    try (InputStream in = openRead(source)) {
+      OutputStream out = openWrite(target);
+      try {
+        in.transferTo(out);
+      } catch (IOException | RuntimeException e) {
+        // closing would publish a truncated target
+        Abortable.abortOrClose(out, e);
+        throw e;
       }
+      out.close();
+    }
+  }
+
+  @Override
+  public void download(String fileUrl, Path target) throws IOException {
+    download(FileInfo.parse(fileUrl), target);
+  }
+
+  @Override
+  public void download(FileInfo fileInfo, Path target) throws IOException {
+    if (fileInfo.isLocal()) {
+      // file is stored on the local filesystem, the data stays in the kernel
+      LocalFiles.copy(Path.of(fileInfo.getFileUrl()), target);
       return;
     }
     // file is stored in cloud storage
-    StorageProviderFactory factory = new StorageProviderFactoryImpl(credentials, configuration);
-    StorageProvider provider = factory.getStorageProvider(fileInfo);
-    provider.write(data, fileUrl);
+    StorageProvider provider = getStorageProvider(fileInfo.getBucketInfo().getProvider());
+    provider.download(fileInfo, target);
+  }
+
+  @Override
+  public String upload(Path source, String fileUrl) throws IOException {
+    return upload(source, FileInfo.parse(fileUrl));
+  }
+
+  @Override
+  public String upload(Path source, FileInfo fileInfo) throws IOException {
+    if (fileInfo.isLocal()) {
+      // file is stored on the local filesystem, the data stays in the kernel
+      LocalFiles.copy(source, Path.of(fileInfo.getFileUrl()));
+      // local writes have no response, the version is read from the file attributes
+      return stat(fileInfo).getVersion();
+    }
+    // file is stored in cloud storage
+    invalidateCached(fileInfo);
+    StorageProvider provider = getStorageProvider(fileInfo.getBucketInfo().getProvider());
+    return provider.upload(source, fileInfo);
   }
 
   @Override
   public boolean delete(String fileUrl) throws IOException {
-    FileInfo fileInfo = FileInfo.parse(fileUrl);
+    return delete(FileInfo.parse(fileUrl));
+  }
+
+  @Override
+  public boolean delete(FileInfo fileInfo) throws IOException {
     if (fileInfo.isLocal()) {
       // file is stored on the local filesystem
-      File file = new File(fileUrl);
+      File file = new File(fileInfo.getFileUrl());
       return file.delete();
     }
     // file is stored in cloud storage
-    StorageProviderFactory factory = new StorageProviderFactoryImpl(credentials, configuration);
-    StorageProvider provider = factory.getStorageProvider(fileInfo);
-    return provider.delete(fileUrl);
+    invalidateCached(fileInfo);
+    StorageProvider provider = getStorageProvider(fileInfo.getBucketInfo().getProvider());
+    return provider.delete(fileInfo);
+  }
+
+  @Override
+  public void deleteAll(List<String> fileUrls) throws IOException {
+    // group the files by bucket, so each bucket is cleaned up with batched requests
+    Map<String, List<String>> fileNamesByBucket = new LinkedHashMap<>();
+    Map<String, BucketInfo> buckets = new HashMap<>();
+    for (String fileUrl : fileUrls) {
+      FileInfo fileInfo = FileInfo.parse(fileUrl);
+      if (fileInfo.isLocal()) {
+        // file is stored on the local filesystem
+        Files.deleteIfExists(Path.of(fileInfo.getFileUrl()));
+        continue;
+      }
+      invalidateCached(fileInfo);
+      String bucketUrl = fileInfo.getBucketInfo().getBucketUrl();
+      fileNamesByBucket
+          .computeIfAbsent(bucketUrl, k -> new ArrayList<>())
+          .add(fileInfo.getFileName());
+      buckets.putIfAbsent(bucketUrl, fileInfo.getBucketInfo());
+    }
+    // files are stored in cloud storage
+    for (Map.Entry<String, List<String>> bucket : fileNamesByBucket.entrySet()) {
+      BucketInfo bucketInfo = buckets.get(bucket.getKey());
+      StorageProvider provider = getStorageProvider(bucketInfo.getProvider());
+      provider.deleteAll(bucketInfo, bucket.getValue());
+    }
   }
 
   @Override
   public String createBucket(Provider provider, String bucketName, String region) throws Exception {
-    StorageProviderFactory factory = new StorageProviderFactoryImpl(credentials, configuration);
-    StorageProvider storageProvider = factory.getStorageProvider(provider);
+    StorageProvider storageProvider = getStorageProvider(provider);
     storageProvider.createBucket(bucketName, region);
     return bucketName;
   }
@@ -81,8 +337,7 @@ public class StorageImpl implements Storage {
   public String deleteBucket(Provider provider, String bucketName, String region)
       throws IOException {
     try {
-      StorageProviderFactory factory = new StorageProviderFactoryImpl(credentials, configuration);
-      StorageProvider storageProvider = factory.getStorageProvider(provider);
+      StorageProvider storageProvider = getStorageProvider(provider);
       storageProvider.deleteBucket(bucketName, region);
       return bucketName;
     } catch (NullPointerException e) {
@@ -92,18 +347,38 @@ public class StorageImpl implements Storage {
 
   @Override
   public String getRegion(String bucketUrl) throws IOException {
-    BucketInfo bucketInfo = BucketInfo.parse(bucketUrl);
-    StorageProviderFactory factory = new StorageProviderFactoryImpl(credentials, configuration);
-    StorageProvider storageProvider = factory.getStorageProvider(bucketInfo.getProvider());
-    return storageProvider.getRegion(bucketInfo.getBucketUrl());
+    return getRegion(BucketInfo.parse(bucketUrl));
+  }
+
+  @Override
+  public String getRegion(BucketInfo bucketInfo) throws IOException {
+    StorageProvider storageProvider = getStorageProvider(bucketInfo.getProvider());
+    return storageProvider.getRegion(bucketInfo);
   }
 
   @Override
   public List<String> listFiles(String bucketUrl) throws IOException {
+    try (Stream<String> files = listFiles(bucketUrl, null)) {
+      return files.collect(Collectors.toList());
+    }
+  }
+
+  @Override
+  public Stream<String> listFiles(String bucketUrl, String prefix) throws IOException {
     BucketInfo bucketInfo = BucketInfo.parse(bucketUrl);
-    StorageProviderFactory factory = new StorageProviderFactoryImpl(credentials, configuration);
-    StorageProvider storageProvider = factory.getStorageProvider(bucketInfo.getProvider());
-    return storageProvider.listFiles(bucketUrl);
+    StorageProvider storageProvider = getStorageProvider(bucketInfo.getProvider());
+    return storageProvider.listFiles(bucketInfo, prefix);
   }
 
+  /** Drop a cloud file from the disk cache, so the disk space is freed right away. */
+  private void invalidateCached(FileInfo fileInfo) {
+    if (diskCache != null && !fileInfo.isLocal()) {
+      diskCache.invalidate(fileInfo.getFileUrl());
+    }
+  }
+
+  /** Get the long-lived storage provider for the cloud, create it if it does not exist yet. */
+  private StorageProvider getStorageProvider(Provider provider) {
+    return providers.computeIfAbsent(provider, factory::getStorageProvider);
+  }
 }
@@ -1,31 +1,138 @@
 package storage;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.stream.Stream;
 
+/**
+ * Provider specific storage operations. Instances are long-lived and shared by all threads of a
+ * {@link StorageImpl}, so implementations must be thread-safe.
+ *
+ * <p>All operations take an already parsed {@link FileInfo} or {@link BucketInfo}, so a url is
+ * parsed only once per request. The url based variants are shortcuts that parse the url first.
+ */
 public interface StorageProvider {
 
-  byte[] read(String fileUrl) throws Exception;
+  default byte[] read(FileInfo fileInfo) throws Exception {
+    return readIfChanged(fileInfo, null).getData();
+  }
 
-  void write(byte[] data, String fileUrl) throws Exception;
+  default byte[] read(String fileUrl) throws Exception {
+    return read(FileInfo.parse(fileUrl));
+  }
 
-  boolean delete(String fileUrl) throws IOException;
+  /**
+   * Read a file only if its current version differs from the given one. The version is compared by
+   * the provider (If-None-Match for AWS and Azure, the generation for GCP), so an unchanged file is
+   * not transferred again.
+   *
+   * @param fileInfo The file to read.
+   * @param version The version the caller already has, null reads the file unconditionally.
+   * @return The contents and version of the file, or null if the file has not changed.
+   */
+  VersionedFile readIfChanged(FileInfo fileInfo, String version) throws Exception;
+
+  /**
+   * Retrieve the metadata of a file without transferring its contents.
+   *
+   * @return The metadata, or null if the file does not exist.
+   */
+  FileMetadata stat(FileInfo fileInfo) throws IOException;
+
+  /** @return The version of the written file, taken from the response of the write. */
+  String write(byte[] data, FileInfo fileInfo) throws Exception;
+
+  default String write(byte[] data, String fileUrl) throws Exception {
+    return write(data, FileInfo.parse(fileUrl));
+  }
+
+  InputStream openRead(FileInfo fileInfo) throws IOException;
+
+  default InputStream openRead(String fileUrl) throws IOException {
+    return openRead(FileInfo.parse(fileUrl));
+  }
+
+  OutputStream openWrite(FileInfo fileInfo) throws IOException;
+
+  default OutputStream openWrite(String fileUrl) throws IOException {
+    return openWrite(FileInfo.parse(fileUrl));
+  }
+
+  /**
+   * Download a file to the local filesystem without holding it in memory as a whole. The target
+   * file is replaced once the download is complete.
+   */
+  void download(FileInfo fileInfo, Path target) throws IOException;
+
+  /**
+   * Upload a local file without holding it in memory as a whole. The file becomes visible once the
+   * upload is complete.
+   *
+   * @return The version of the uploaded file, taken from the response of the upload.
+   */
+  String upload(Path source, FileInfo fileInfo) throws IOException;
+
+  /**
+   * Copy a file within the storage of this provider without transferring the data through the JVM.
+   * The target file is overwritten if it already exists.
+   */
+  void copy(FileInfo source, FileInfo target) throws IOException;
+
+  default void copy(String sourceUrl, String targetUrl) throws IOException {
+    copy(FileInfo.parse(sourceUrl), FileInfo.parse(targetUrl));
+  }
+
+  boolean delete(FileInfo fileInfo) throws IOException;
+
+  default boolean delete(String fileUrl) throws IOException {
+    return delete(FileInfo.parse(fileUrl));
+  }
+
+  /**
+   * Delete files of a single bucket with batched requests. Files that do not exist are ignored.
+   *
+   * @param bucketInfo The bucket that contains the files.
+   * @param fileNames The names of the files within the bucket.
+   */
+  void deleteAll(BucketInfo bucketInfo, List<String> fileNames) throws IOException;
+
+  default void deleteAll(String bucketUrl, List<String> fileNames) throws IOException {
+    deleteAll(BucketInfo.parse(bucketUrl), fileNames);
+  }
 
   String createBucket(String bucketName, String region) throws IOException;
 
   String deleteBucket(String bucketName, String region) throws IOException;
 
   /**
-   * Retrieve the location where the storage bucket resides. First, the bucket url is parsed, if it
-   * can not be parsed from the bucket url, the providers API is used to query the bucket location.
+   * Retrieve the location where the storage bucket resides. If the location is not known from the
+   * bucket url, the providers API is used to query the bucket location. The resolved location is
+   * attached to the bucket info, so it is not resolved again for the same request.
    *
-   * @param bucketUrl The url of the storage bucket.
+   * @param bucketInfo The storage bucket.
    * @return The location of the storage bucket. For AWS, this is the region code. For GCP, this is
    *     the single-region or multi-region code. For Azure, this is the name of the storage account,
    *     which is bound to a specific region.
    */
-  String getRegion(String bucketUrl) throws IOException;
+  String getRegion(BucketInfo bucketInfo) throws IOException;
 
-  List<String> listFiles(String bucketUrl) throws IOException;
+  default String getRegion(String bucketUrl) throws IOException {
+    return getRegion(BucketInfo.parse(bucketUrl));
+  }
+
+  /**
+   * List the files of a bucket lazily. Pages are requested from the provider's API while the
+   * stream is consumed.
+   *
+   * @param bucketInfo The storage bucket.
+   * @param prefix Only files whose name starts with the prefix are listed, null lists all files.
+   */
+  Stream<String> listFiles(BucketInfo bucketInfo, String prefix) throws IOException;
 
+  default Stream<String> listFiles(String bucketUrl, String prefix) throws IOException {
+    return listFiles(BucketInfo.parse(bucketUrl), prefix);
+  }
 }
@@ -1,23 +1,39 @@
 package storage;
 
+import shared.ClientRegistry;
 import shared.Configuration;
 import shared.Credentials;
+import shared.Provider;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class StorageProviderAmazon implements StorageProvider {
 
+  // larger objects cannot be copied with a single request
+  private static final long MAX_COPY_OBJECT_SIZE = 5L * 1024 * 1024 * 1024;
+  // S3 deletes at most 1000 objects with a single request
+  private static final int MAX_DELETE_OBJECTS = 1000;
+
   private final Credentials credentials;
   private final Configuration configuration;
 
@@ -27,36 +43,243 @@ public class StorageProviderAmazon implements StorageProvider {
   }
 
   @Override
-  public byte[] read(String fileUrl) throws Exception {
-    FileInfo fileInfo = FileInfo.parse(fileUrl);
-    String region = getRegion(fileInfo.getBucketInfo().getBucketUrl());
+  public VersionedFile readIfChanged(FileInfo fileInfo, String version) throws Exception {
+    String region = getRegion(fileInfo.getBucketInfo());
+    S3Client s3 = getAmazonS3Client(credentials, region);
+    String bucketName = fileInfo.getBucketInfo().getBucketName();
+    String key = fileInfo.getFileName();
+    int partSize = configuration.getDownloadPartSize();
+    // the first part also tells the size of the whole object
+    ResponseInputStream<GetObjectResponse> response;
+    try {
+      response =
+          s3.getObject(
+              GetObjectRequest.builder()
+                  .bucket(bucketName)
+                  .key(key)
+                  .range(range(0, partSize))
+                  .ifNoneMatch(version)
+                  .build());
+    } catch (S3Exception e) {
+      if (e.statusCode() == 304) {
+        // the caller already has the current version
+        return null;
+      }
+      if (e.statusCode() != 416) {
+        throw e;
+      }
+      // an empty object cannot satisfy any range
+      return new VersionedFile(new byte[0], null);
+    }
+    byte[] data;
+    int firstPartLength;
+    String eTag = response.response().eTag();
+    try (response) {
+      String contentRange = response.response().contentRange();
+      long size =
+          contentRange != null
+              ? RangedDownload.parseTotalSize(contentRange)
+              : response.response().contentLength();
+      data = new byte[RangedDownload.toArraySize(size)];
+      firstPartLength = response.readNBytes(data, 0, data.length);
+    }
+    if (firstPartLength < data.length) {
+      // fetch the remaining parts concurrently, pinned to the version of the first part
+      RangedDownload.intoArray(
+          data,
+          firstPartLength,
+          (offset, length, out) ->
+              s3.getObject(
+                  GetObjectRequest.builder()
+                      .bucket(bucketName)
+                      .key(key)
+                      .range(range(offset, length))
+                      .ifMatch(eTag)
+                      .build(),
+                  ResponseTransformer.toOutputStream(out)),
+          configuration);
+    }
+    return new VersionedFile(data, eTag);
+  }
+
+  @Override
+  public FileMetadata stat(FileInfo fileInfo) throws IOException {
+    S3Client s3 = getAmazonS3Client(credentials, getRegion(fileInfo.getBucketInfo()));
+    HeadObjectResponse head;
+    try {
+      head =
+          s3.headObject(
+              HeadObjectRequest.builder()
+                  .bucket(fileInfo.getBucketInfo().getBucketName())
+                  .key(fileInfo.getFileName())
+                  .build());
+    } catch (S3Exception e) {
+      if (e.statusCode() != 404) {
+        throw e;
+      }
+      return null;
+    }
+    return new FileMetadata(head.contentLength(), head.eTag(), head.lastModified());
+  }
+
+  private static String range(long offset, long length) {
+    return "bytes=" + offset + "-" + (offset + length - 1);
+  }
+
+  @Override
+  public String write(byte[] data, FileInfo fileInfo) throws Exception {
+    String region = getRegion(fileInfo.getBucketInfo());
+    S3Client s3 = getAmazonS3Client(credentials, region);
+    if (data.length > configuration.getMultipartThreshold()) {
+      // upload large files in parallel parts
+      return S3MultipartUpload.upload(
+          s3,
+          fileInfo.getBucketInfo().getBucketName(),
+          fileInfo.getFileName(),
+          data,
+          configuration);
+    }
+    PutObjectRequest objectRequest =
+        PutObjectRequest.builder()
+            .bucket(fileInfo.getBucketInfo().getBucketName())
+            .key(fileInfo.getFileName())
+            .build();
+    return s3.putObject(objectRequest, RequestBody.fromByteBuffer(ByteBuffer.wrap(data))).eTag();
+  }
+
+  @Override
+  public InputStream openRead(FileInfo fileInfo) throws IOException {
+    String region = getRegion(fileInfo.getBucketInfo());
     S3Client s3 = getAmazonS3Client(credentials, region);
     GetObjectRequest getObjectRequest =
         GetObjectRequest.builder()
             .bucket(fileInfo.getBucketInfo().getBucketName())
             .key(fileInfo.getFileName())
             .build();
-    ResponseInputStream<GetObjectResponse> response = s3.getObject(getObjectRequest);
-    return response.readAllBytes();
+    return s3.getObject(getObjectRequest);
   }
 
   @Override
-  public void write(byte[] data, String fileUrl) throws Exception {
-    FileInfo fileInfo = FileInfo.parse(fileUrl);
-    String region = getRegion(fileInfo.getBucketInfo().getBucketUrl());
+  public OutputStream openWrite(FileInfo fileInfo) throws IOException {
+    String region = getRegion(fileInfo.getBucketInfo());
     S3Client s3 = getAmazonS3Client(credentials, region);
+    return new S3MultipartOutputStream(
+        s3, fileInfo.getBucketInfo().getBucketName(), fileInfo.getFileName(), configuration);
+  }
+
+  @Override
+  public void download(FileInfo fileInfo, Path target) throws IOException {
+    S3Client s3 = getAmazonS3Client(credentials, getRegion(fileInfo.getBucketInfo()));
+    String bucketName = fileInfo.getBucketInfo().getBucketName();
+    String key = fileInfo.getFileName();
+    LocalFiles.replace(
+        target,
+        tmpFile -> {
+          try (FileChannel file =
+              FileChannel.open(tmpFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            // the first part also tells the size of the whole object
+            GetObjectRequest request =
+                GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .range(range(0, configuration.getDownloadPartSize()))
+                    .build();
+            ResponseInputStream<GetObjectResponse> response;
+            try {
+              response = s3.getObject(request);
+            } catch (S3Exception e) {
+              if (e.statusCode() != 416) {
+                throw e;
+              }
+              // an empty object cannot satisfy any range
+              return;
+            }
+            long firstPartLength;
+            try (response) {
+              firstPartLength = file.transferFrom(Channels.newChannel(response), 0, Long.MAX_VALUE);
+            }
+            String contentRange = response.response().contentRange();
+            long size =
+                contentRange != null ? RangedDownload.parseTotalSize(contentRange) : firstPartLength;
+            // fetch the remaining parts concurrently, pinned to the version of the first part
+            String eTag = response.response().eTag();
+            RangedDownload.intoChannel(
+                file,
+                firstPartLength,
+                size,
+                (offset, length, out) ->
+                    s3.getObject(
+                        GetObjectRequest.builder()
+                            .bucket(bucketName)
+                            .key(key)
+                            .range(range(offset, length))
+                            .ifMatch(eTag)
+                            .build(),
+                        ResponseTransformer.toOutputStream(out)),
+                configuration);
+          }
+        });
+  }
+
+  @Override
+  public String upload(Path source, FileInfo fileInfo) throws IOException {
+    S3Client s3 = getAmazonS3Client(credentials, getRegion(fileInfo.getBucketInfo()));
+    long size = Files.size(source);
+    if (size > configuration.getMultipartThreshold()) {
+      // upload large files in parallel parts
+      return S3MultipartUpload.upload(
+          s3,
+          fileInfo.getBucketInfo().getBucketName(),
+          fileInfo.getFileName(),
+          source,
+          size,
+          configuration);
+    }
     PutObjectRequest objectRequest =
         PutObjectRequest.builder()
             .bucket(fileInfo.getBucketInfo().getBucketName())
             .key(fileInfo.getFileName())
             .build();
-    s3.putObject(objectRequest, RequestBody.fromByteBuffer(ByteBuffer.wrap(data)));
+    return s3.putObject(objectRequest, RequestBody.fromFile(source)).eTag();
+  }
+
+  @Override
+  public void copy(FileInfo source, FileInfo target) throws IOException {
+    String sourceBucketName = source.getBucketInfo().getBucketName();
+    String targetBucketName = target.getBucketInfo().getBucketName();
+    S3Client sourceS3 =
+        getAmazonS3Client(credentials, getRegion(source.getBucketInfo()));
+    // the copy requests are sent to the region of the target bucket
+    S3Client targetS3 =
+        getAmazonS3Client(credentials, getRegion(target.getBucketInfo()));
+    HeadObjectResponse head =
+        sourceS3.headObject(
+            HeadObjectRequest.builder().bucket(sourceBucketName).key(source.getFileName()).build());
+    if (head.contentLength() > MAX_COPY_OBJECT_SIZE) {
+      S3MultipartUpload.copy(
+          targetS3,
+          sourceBucketName,
+          source.getFileName(),
+          head.eTag(),
+          head.contentLength(),
+          targetBucketName,
+          target.getFileName(),
+          configuration);
+      return;
+    }
+    CopyObjectRequest request =
+        CopyObjectRequest.builder()
+            .sourceBucket(sourceBucketName)
+            .sourceKey(source.getFileName())
+            .destinationBucket(targetBucketName)
+            .destinationKey(target.getFileName())
+            .build();
+    targetS3.copyObject(request);
   }
 
   @Override
-  public boolean delete(String fileUrl) throws IOException {
-    FileInfo fileInfo = FileInfo.parse(fileUrl);
-    String region = getRegion(fileInfo.getBucketInfo().getBucketUrl());
+  public boolean delete(FileInfo fileInfo) throws IOException {
+    String region = getRegion(fileInfo.getBucketInfo());
     try {
       S3Client s3 = getAmazonS3Client(credentials, region);
       DeleteObjectRequest deleteObjectRequest =
@@ -71,6 +294,52 @@ public class StorageProviderAmazon implements StorageProvider {
     return true;
   }
 
+  @Override
+  public void deleteAll(BucketInfo bucketInfo, List<String> fileNames) throws IOException {
+    S3Client s3 = getAmazonS3Client(credentials, getRegion(bucketInfo));
+    ParallelTransfer<Void> transfer =
+        new ParallelTransfer<>(
+            configuration.getTransferConcurrency(), configuration.getTransferRetries());
+    for (int i = 0; i < fileNames.size(); i += MAX_DELETE_OBJECTS) {
+      List<String> keys = fileNames.subList(i, Math.min(i + MAX_DELETE_OBJECTS, fileNames.size()));
+      submitDeleteObjects(transfer, s3, bucketInfo.getBucketName(), keys);
+    }
+    transfer.await();
+  }
+
+  /** Delete up to 1000 objects with a single request. */
+  private static void submitDeleteObjects(
+      ParallelTransfer<Void> transfer, S3Client s3, String bucketName, List<String> keys)
+      throws IOException {
+    List<ObjectIdentifier> objectIdentifiers =
+        keys.stream()
+            .map(key -> ObjectIdentifier.builder().key(key).build())
+            .collect(Collectors.toList());
+    transfer.submit(
+        () -> {
+          DeleteObjectsRequest deleteObjectsRequest =
+              DeleteObjectsRequest.builder()
+                  .bucket(bucketName)
+                  .delete(Delete.builder().objects(objectIdentifiers).quiet(true).build())
+                  .build();
+          // quiet mode only reports the keys that could not be deleted
+          DeleteObjectsResponse response = s3.deleteObjects(deleteObjectsRequest);
+          if (response.hasErrors() && !response.errors().isEmpty()) {
+            S3Error error = response.errors().get(0);
+            throw new IOException(
+                "Failed to delete "
+                    + response.errors().size()
+                    + " files from bucket "
+                    + bucketName
+                    + ", e.g. "
+                    + error.key()
+                    + ": "
+                    + error.message());
+          }
+          return null;
+        });
+  }
+
   @Override
   public String createBucket(String bucketName, String region) throws IOException {
     S3Client s3 = getAmazonS3Client(credentials, region);
@@ -84,43 +353,53 @@ public class StorageProviderAmazon implements StorageProvider {
   public String deleteBucket(String bucketName, String region) throws IOException {
     // init aws s3 client
     S3Client s3 = getAmazonS3Client(credentials, region);
-    // delete all files from the bucket if necessary
+    // delete all files from the bucket if necessary, each page is deleted while the next is listed
     ListObjectsV2Request request = ListObjectsV2Request.builder().bucket(bucketName).build();
     ListObjectsV2Iterable list = s3.listObjectsV2Paginator(request);
+    ParallelTransfer<Void> transfer =
+        new ParallelTransfer<>(
+            configuration.getTransferConcurrency(), configuration.getTransferRetries());
     for (ListObjectsV2Response response : list) {
       List<S3Object> objects = response.contents();
       if (!objects.isEmpty()) {
-        List<ObjectIdentifier> objectIdentifiers =
-            objects.stream()
-                .map(o -> ObjectIdentifier.builder().key(o.key()).build())
-                .collect(Collectors.toList());
-        DeleteObjectsRequest deleteObjectsRequest =
-            DeleteObjectsRequest.builder()
-                .bucket(bucketName)
-                .delete(Delete.builder().objects(objectIdentifiers).build())
-                .build();
-        s3.deleteObjects(deleteObjectsRequest);
+        submitDeleteObjects(
+            transfer,
+            s3,
+            bucketName,
+            objects.stream().map(S3Object::key).collect(Collectors.toList()));
       }
     }
+    transfer.await();
     // delete the actual bucket itself
     DeleteBucketRequest deleteBucketRequest =
         DeleteBucketRequest.builder().bucket(bucketName).build();
     s3.deleteBucket(deleteBucketRequest);
+    RegionCache.getInstance().invalidate(Provider.AWS, bucketName);
     return bucketName;
   }
 
   @Override
-  public String getRegion(String bucketUrl) throws IOException {
-    // try to parse the region from the bucket url
-    BucketInfo bucketInfo = BucketInfo.parse(bucketUrl);
+  public String getRegion(BucketInfo bucketInfo) throws IOException {
+    // the region was either parsed from the bucket url or has already been resolved
     if (bucketInfo.getRegion() != null) {
       return bucketInfo.getRegion();
     }
     // query the region if it cannot be parsed from the url
+    String region =
+        RegionCache.getInstance()
+            .getRegion(
+                Provider.AWS,
+                bucketInfo.getBucketName(),
+                configuration.getRegionCacheTtl(),
+                () -> queryRegion(bucketInfo.getBucketName()));
+    bucketInfo.setRegion(region);
+    return region;
+  }
+
+  private String queryRegion(String bucketName) {
     S3Client s3 = getAmazonS3Client(credentials, "us-east-1");
     GetBucketLocationResponse response =
-        s3.getBucketLocation(
-            GetBucketLocationRequest.builder().bucket(bucketInfo.getBucketName()).build());
+        s3.getBucketLocation(GetBucketLocationRequest.builder().bucket(bucketName).build());
     String locationConstraint = response.locationConstraint().toString();
     if (Objects.equals(locationConstraint, "null")) {
       return "us-east-1";
@@ -129,23 +408,32 @@ public class StorageProviderAmazon implements StorageProvider {
   }
 
   @Override
-  public List<String> listFiles(String bucketUrl) throws IOException {
-    BucketInfo bucketInfo = BucketInfo.parse(bucketUrl);
-    String region = getRegion(bucketUrl);
+  public Stream<String> listFiles(BucketInfo bucketInfo, String prefix) throws IOException {
+    String region = getRegion(bucketInfo);
     S3Client s3 = getAmazonS3Client(credentials, region);
-    ListObjectsRequest listObjects =
-        ListObjectsRequest.builder().bucket(bucketInfo.getBucketName()).build();
-    ListObjectsResponse res = s3.listObjects(listObjects);
-    List<S3Object> objects = res.contents();
-    return objects.stream().map(S3Object::key).collect(Collectors.toList());
+    ListObjectsV2Request request =
+        ListObjectsV2Request.builder().bucket(bucketInfo.getBucketName()).prefix(prefix).build();
+    // the paginator requests the next page once the previous one has been consumed
+    return PagedListing.stream(
+        s3.listObjectsV2Paginator(request).iterator(),
+        response ->
+            response.contents().stream().map(S3Object::key).collect(Collectors.toList()),
+        configuration.isPrefetchListPages());
   }
 
-  /** Create amazon S3 client of SDK V2 */
+  /** Get the shared amazon S3 client of SDK V2 for the region */
   private static S3Client getAmazonS3Client(Credentials credentials, String region) {
-    return S3Client.builder()
-        .region(Region.of(region))
-        .endpointOverride(URI.create("https://s3." + region + ".amazonaws.com/"))
-        .credentialsProvider(credentials.getAwsCredentials())
-        .build();
+    return ClientRegistry.getInstance()
+        .getClient(
+            S3Client.class,
+            Provider.AWS,
+            region,
+            credentials.getAwsCredentials(),
+            () ->
+                S3Client.builder()
+                    .region(Region.of(region))
+                    .endpointOverride(URI.create("https://s3." + region + ".amazonaws.com/"))
+                    .credentialsProvider(credentials.getAwsCredentials())
+                    .build());
   }
 }
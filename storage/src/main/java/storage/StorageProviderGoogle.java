@@ -1,18 +1,40 @@
 package storage;
 
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.gax.paging.Page;
+import com.google.cloud.ReadChannel;
+import com.google.cloud.http.HttpTransportOptions;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.*;
+import shared.ClientRegistry;
 import shared.Configuration;
 import shared.Credentials;
+import shared.Provider;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
 
 public class StorageProviderGoogle implements StorageProvider {
 
+  private static final int MAX_COMPOSE_PARTS = 32;
+  // GCS accepts at most 100 calls in a single batch request
+  private static final int MAX_BATCH_SIZE = 100;
+
   private final Credentials credentials;
   private final Configuration configuration;
 
@@ -22,33 +44,275 @@ public class StorageProviderGoogle implements StorageProvider {
   }
 
   @Override
-  public byte[] read(String fileUrl) throws Exception {
-    FileInfo fileInfo = FileInfo.parse(fileUrl);
+  public VersionedFile readIfChanged(FileInfo fileInfo, String version) throws Exception {
+    Storage gcs = getGoogleCloudStorage(credentials);
+    String bucketName = fileInfo.getBucketInfo().getBucketName();
+    String fileName = fileInfo.getFileName();
+    // the first part also tells the generation and the size of the whole object, the storage client
+    // does not expose them for reads, so the first part is read through the JSON API directly
+    com.google.api.services.storage.Storage.Objects.Get request =
+        getJsonApiClient(credentials).objects().get(bucketName, fileName);
+    if (version != null) {
+      request.setIfGenerationNotMatch(Long.parseLong(version));
+    }
+    request.getRequestHeaders().setRange("bytes=0-" + (configuration.getDownloadPartSize() - 1));
+    HttpResponse response;
+    try {
+      response = request.executeMedia();
+    } catch (HttpResponseException e) {
+      if (e.getStatusCode() == 304) {
+        // the caller already has the current generation
+        return null;
+      }
+      if (e.getStatusCode() == 404) {
+        throw new IOException("File " + fileInfo.getFileUrl() + " does not exist.", e);
+      }
+      if (e.getStatusCode() != 416) {
+        throw e;
+      }
+      // an empty object cannot satisfy any range
+      return new VersionedFile(new byte[0], null);
+    }
+    byte[] data;
+    int firstPartLength;
+    long generation;
+    try {
+      HttpHeaders headers = response.getHeaders();
+      generation = Long.parseLong(headers.getFirstHeaderStringValue("x-goog-generation"));
+      long size =
+          headers.getContentRange() != null
+              ? RangedDownload.parseTotalSize(headers.getContentRange())
+              : headers.getContentLength();
+      data = new byte[RangedDownload.toArraySize(size)];
+      firstPartLength = response.getContent().readNBytes(data, 0, data.length);
+    } finally {
+      response.disconnect();
+    }
+    if (firstPartLength < data.length) {
+      // fetch the remaining parts concurrently, pinned to the generation of the first part
+      BlobId blobId = BlobId.of(bucketName, fileName, generation);
+      RangedDownload.intoArray(
+          data,
+          firstPartLength,
+          (offset, length, out) -> {
+            try (ReadChannel reader = gcs.reader(blobId)) {
+              reader.seek(offset);
+              reader.limit(offset + length);
+              Channels.newInputStream(reader).transferTo(out);
+            }
+          },
+          configuration);
+    }
+    return new VersionedFile(data, String.valueOf(generation));
+  }
+
+  @Override
+  public FileMetadata stat(FileInfo fileInfo) {
     Storage gcs = getGoogleCloudStorage(credentials);
-    return gcs.readAllBytes(fileInfo.getBucketInfo().getBucketName(), fileInfo.getFileName());
+    // only request the fields that are needed
+    Blob blob =
+        gcs.get(
+            fileInfo.getBucketInfo().getBucketName(),
+            fileInfo.getFileName(),
+            Storage.BlobGetOption.fields(
+                Storage.BlobField.SIZE, Storage.BlobField.GENERATION, Storage.BlobField.UPDATED));
+    if (blob == null) {
+      return null;
+    }
+    return new FileMetadata(
+        blob.getSize(),
+        String.valueOf(blob.getGeneration()),
+        blob.getUpdateTimeOffsetDateTime().toInstant());
   }
 
   @Override
-  public void write(byte[] data, String fileUrl) throws Exception {
-    FileInfo fileInfo = FileInfo.parse(fileUrl);
+  public String write(byte[] data, FileInfo fileInfo) throws Exception {
     Storage gcs = getGoogleCloudStorage(credentials);
     BlobId blobId = BlobId.of(fileInfo.getBucketInfo().getBucketName(), fileInfo.getFileName());
     BlobInfo blobInfo = BlobInfo.newBuilder(blobId).build();
-    gcs.createFrom(blobInfo, new ByteArrayInputStream(data));
+    if (data.length > configuration.getMultipartThreshold()) {
+      // upload large files in parallel parts
+      return writeComposite(
+          gcs,
+          blobInfo,
+          data.length,
+          (part, offset, length) -> gcs.create(part, data, (int) offset, (int) length));
+    }
+    return String.valueOf(gcs.createFrom(blobInfo, new ByteArrayInputStream(data)).getGeneration());
+  }
+
+  /** Uploads a byte range of the data as a part object. */
+  @FunctionalInterface
+  private interface PartWriter {
+    void write(BlobInfo part, long offset, long length) throws IOException;
+  }
+
+  /**
+   * Upload the data as temporary part objects in parallel and compose them into the target object.
+   * The target only becomes visible once all parts have been uploaded. The part objects are deleted
+   * afterwards.
+   *
+   * @return The generation of the target object.
+   */
+  private String writeComposite(Storage gcs, BlobInfo target, long size, PartWriter partWriter)
+      throws IOException {
+    // GCS can compose at most 32 objects with a single request
+    long partSize =
+        Math.max(
+            configuration.getMultipartPartSize(),
+            (size + MAX_COMPOSE_PARTS - 1) / MAX_COMPOSE_PARTS);
+    String partPrefix = target.getName() + ".core-part-" + UUID.randomUUID() + "-";
+    ParallelTransfer<String> transfer =
+        new ParallelTransfer<>(
+            configuration.getTransferConcurrency(), configuration.getTransferRetries());
+    List<BlobId> parts = new ArrayList<>();
+    try {
+      for (long offset = 0; offset < size; offset += partSize) {
+        long partOffset = offset;
+        long partLength = Math.min(partSize, size - offset);
+        BlobId partId = BlobId.of(target.getBucket(), partPrefix + parts.size());
+        parts.add(partId);
+        transfer.submit(
+            () -> {
+              partWriter.write(BlobInfo.newBuilder(partId).build(), partOffset, partLength);
+              return partId.getName();
+            });
+      }
+      List<String> partNames = transfer.await();
+      Blob composed =
+          gcs.compose(
+              Storage.ComposeRequest.newBuilder().addSource(partNames).setTarget(target).build());
+      return String.valueOf(composed.getGeneration());
+    } finally {
+      // parts that are still being written would be left behind if they finished after the delete
+      transfer.cancelAndWait();
+      gcs.delete(parts);
+    }
   }
 
   @Override
-  public boolean delete(String fileUrl) {
-    FileInfo fileInfo = FileInfo.parse(fileUrl);
+  public InputStream openRead(FileInfo fileInfo) {
+    Storage gcs = getGoogleCloudStorage(credentials);
+    BlobId blobId = BlobId.of(fileInfo.getBucketInfo().getBucketName(), fileInfo.getFileName());
+    return Channels.newInputStream(gcs.reader(blobId));
+  }
+
+  @Override
+  public OutputStream openWrite(FileInfo fileInfo) {
+    Storage gcs = getGoogleCloudStorage(credentials);
+    BlobId blobId = BlobId.of(fileInfo.getBucketInfo().getBucketName(), fileInfo.getFileName());
+    BlobInfo blobInfo = BlobInfo.newBuilder(blobId).build();
+    // the upload is only finalized on close, an aborted upload never creates the object
+    return new AbortableOutputStream(Channels.newOutputStream(gcs.writer(blobInfo)), () -> {});
+  }
+
+  @Override
+  public void download(FileInfo fileInfo, Path target) throws IOException {
     Storage gcs = getGoogleCloudStorage(credentials);
     Blob blob = gcs.get(fileInfo.getBucketInfo().getBucketName(), fileInfo.getFileName());
-    if (blob != null) {
-      Storage.BlobSourceOption precondition =
-          Storage.BlobSourceOption.generationMatch(blob.getGeneration());
-      gcs.delete(fileInfo.getBucketInfo().getBucketName(), fileInfo.getFileName(), precondition);
-      return true;
+    if (blob == null) {
+      throw new IOException("File " + fileInfo.getFileUrl() + " does not exist.");
+    }
+    if (blob.getSize() <= configuration.getDownloadPartSize()) {
+      LocalFiles.replace(target, blob::downloadTo);
+      return;
     }
-    return false;
+    // the blob id contains the generation, so all parts are read from the same version
+    BlobId blobId = blob.getBlobId();
+    LocalFiles.replace(
+        target,
+        tmpFile -> {
+          try (FileChannel file =
+              FileChannel.open(tmpFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            RangedDownload.intoChannel(
+                file,
+                0,
+                blob.getSize(),
+                (offset, length, out) -> {
+                  try (ReadChannel reader = gcs.reader(blobId)) {
+                    reader.seek(offset);
+                    reader.limit(offset + length);
+                    Channels.newInputStream(reader).transferTo(out);
+                  }
+                },
+                configuration);
+          }
+        });
+  }
+
+  @Override
+  public String upload(Path source, FileInfo fileInfo) throws IOException {
+    Storage gcs = getGoogleCloudStorage(credentials);
+    BlobId blobId = BlobId.of(fileInfo.getBucketInfo().getBucketName(), fileInfo.getFileName());
+    BlobInfo blobInfo = BlobInfo.newBuilder(blobId).build();
+    long size = Files.size(source);
+    if (size > configuration.getMultipartThreshold()) {
+      // upload large files in parallel parts, each part is read from the file when it is sent
+      return writeComposite(
+          gcs,
+          blobInfo,
+          size,
+          (part, offset, length) -> {
+            try (InputStream in = LocalFiles.openRange(source, offset, length)) {
+              gcs.createFrom(part, in);
+            }
+          });
+    }
+    return String.valueOf(gcs.createFrom(blobInfo, source).getGeneration());
+  }
+
+  @Override
+  public void copy(FileInfo source, FileInfo target) {
+    Storage gcs = getGoogleCloudStorage(credentials);
+    Storage.CopyRequest request =
+        Storage.CopyRequest.newBuilder()
+            .setSource(BlobId.of(source.getBucketInfo().getBucketName(), source.getFileName()))
+            .setTarget(BlobId.of(target.getBucketInfo().getBucketName(), target.getFileName()))
+            .build();
+    // large objects are rewritten in several calls, getResult continues until the copy is done
+    gcs.copy(request).getResult();
+  }
+
+  @Override
+  public boolean delete(FileInfo fileInfo) {
+    Storage gcs = getGoogleCloudStorage(credentials);
+    // returns false if the object does not exist, so no lookup is needed upfront
+    return gcs.delete(fileInfo.getBucketInfo().getBucketName(), fileInfo.getFileName());
+  }
+
+  @Override
+  public void deleteAll(BucketInfo bucketInfo, List<String> fileNames) throws IOException {
+    Storage gcs = getGoogleCloudStorage(credentials);
+    ParallelTransfer<Void> transfer =
+        new ParallelTransfer<>(
+            configuration.getTransferConcurrency(), configuration.getTransferRetries());
+    for (int i = 0; i < fileNames.size(); i += MAX_BATCH_SIZE) {
+      List<BlobId> blobIds = new ArrayList<>();
+      for (String fileName : fileNames.subList(i, Math.min(i + MAX_BATCH_SIZE, fileNames.size()))) {
+        blobIds.add(BlobId.of(bucketInfo.getBucketName(), fileName));
+      }
+      submitDeleteBatch(transfer, gcs, blobIds);
+    }
+    transfer.await();
+  }
+
+  /** Delete up to 100 objects with a single batch request. */
+  private static void submitDeleteBatch(
+      ParallelTransfer<Void> transfer, Storage gcs, List<BlobId> blobIds) throws IOException {
+    transfer.submit(
+        () -> {
+          StorageBatch batch = gcs.batch();
+          List<StorageBatchResult<Boolean>> results = new ArrayList<>();
+          for (BlobId blobId : blobIds) {
+            results.add(batch.delete(blobId));
+          }
+          batch.submit();
+          // get throws if a delete has failed, objects that do not exist are reported as false
+          for (StorageBatchResult<Boolean> result : results) {
+            result.get();
+          }
+          return null;
+        });
   }
 
   @Override
@@ -61,25 +325,52 @@ public class StorageProviderGoogle implements StorageProvider {
   }
 
   @Override
-  public String deleteBucket(String bucketName, String region) {
+  public String deleteBucket(String bucketName, String region) throws IOException {
     Storage gcs = getGoogleCloudStorage(credentials);
-    // delete all objects in the bucket
+    // delete all objects in the bucket, batches are deleted while the next page is listed
     Page<Blob> blobs = gcs.list(bucketName);
+    ParallelTransfer<Void> transfer =
+        new ParallelTransfer<>(
+            configuration.getTransferConcurrency(), configuration.getTransferRetries());
+    List<BlobId> batch = new ArrayList<>();
     for (Blob blob : blobs.iterateAll()) {
-      blob.delete(Blob.BlobSourceOption.generationMatch());
+      batch.add(blob.getBlobId());
+      if (batch.size() == MAX_BATCH_SIZE) {
+        submitDeleteBatch(transfer, gcs, batch);
+        batch = new ArrayList<>();
+      }
     }
+    if (!batch.isEmpty()) {
+      submitDeleteBatch(transfer, gcs, batch);
+    }
+    transfer.await();
     // delete the bucket itself
 
     Bucket bucket = gcs.get(bucketName);
     bucket.delete();
+    RegionCache.getInstance().invalidate(Provider.GCP, bucketName);
     return bucketName;
   }
 
   @Override
-  public String getRegion(String bucketUrl) throws IOException {
-    BucketInfo bucketInfo = BucketInfo.parse(bucketUrl);
+  public String getRegion(BucketInfo bucketInfo) throws IOException {
+    if (bucketInfo.getRegion() != null) {
+      return bucketInfo.getRegion();
+    }
+    String region =
+        RegionCache.getInstance()
+            .getRegion(
+                Provider.GCP,
+                bucketInfo.getBucketName(),
+                configuration.getRegionCacheTtl(),
+                () -> queryRegion(bucketInfo.getBucketName()));
+    bucketInfo.setRegion(region);
+    return region;
+  }
+
+  private String queryRegion(String bucketName) {
     Storage gcs = getGoogleCloudStorage(credentials);
-    Bucket bucket = gcs.get(bucketInfo.getBucketName());
+    Bucket bucket = gcs.get(bucketName);
     String singleRegion = bucket.getLocation().toLowerCase();
     // convert single-region code to multi-region code
     if (singleRegion.startsWith("eu") || singleRegion.startsWith("us")) {
@@ -89,24 +380,77 @@ public class StorageProviderGoogle implements StorageProvider {
   }
 
   @Override
-  public List<String> listFiles(String bucketUrl) {
-    BucketInfo bucketInfo = BucketInfo.parse(bucketUrl);
+  public Stream<String> listFiles(BucketInfo bucketInfo, String prefix) {
     Storage gcs = getGoogleCloudStorage(credentials);
-    Page<Blob> blobs = gcs.list(bucketInfo.getBucketName());
-    List<String> fileKeys = new ArrayList<>();
-    for (Blob blob : blobs.iterateAll()) {
-      fileKeys.add(blob.getName());
-    }
-    return fileKeys;
+    Storage.BlobListOption[] options =
+        prefix != null
+            ? new Storage.BlobListOption[] {Storage.BlobListOption.prefix(prefix)}
+            : new Storage.BlobListOption[0];
+    // request the pages one by one instead of iterating over all of them upfront
+    Iterator<Page<Blob>> pages =
+        new Iterator<>() {
+          private Page<Blob> page;
+
+          @Override
+          public boolean hasNext() {
+            return page == null || page.hasNextPage();
+          }
+
+          @Override
+          public Page<Blob> next() {
+            page =
+                page == null ? gcs.list(bucketInfo.getBucketName(), options) : page.getNextPage();
+            return page;
+          }
+        };
+    return PagedListing.stream(
+        pages,
+        page -> {
+          List<String> fileKeys = new ArrayList<>();
+          for (Blob blob : page.getValues()) {
+            fileKeys.add(blob.getName());
+          }
+          return fileKeys;
+        },
+        configuration.isPrefetchListPages());
+  }
+
+  /** Get the shared Google Cloud Storage client */
+  /** Client of the JSON API, which shares the transport and credentials of the storage client. */
+  private com.google.api.services.storage.Storage getJsonApiClient(Credentials credentials) {
+    return ClientRegistry.getInstance()
+        .getClient(
+            com.google.api.services.storage.Storage.class,
+            Provider.GCP,
+            null,
+            credentials.getGcpCredentials(),
+            () -> {
+              StorageOptions options = getGoogleCloudStorage(credentials).getOptions();
+              HttpTransportOptions transportOptions =
+                  (HttpTransportOptions) options.getTransportOptions();
+              return new com.google.api.services.storage.Storage.Builder(
+                      transportOptions.getHttpTransportFactory().create(),
+                      GsonFactory.getDefaultInstance(),
+                      transportOptions.getHttpRequestInitializer(options))
+                  .setRootUrl(options.getHost() + "/")
+                  .setApplicationName(options.getApplicationName())
+                  .build();
+            });
   }
 
-  /** Create Google Cloud Storage client */
   private Storage getGoogleCloudStorage(Credentials credentials) {
-    return StorageOptions.newBuilder()
-        .setCredentials(credentials.getGcpCredentials())
-        .setProjectId(credentials.getGoogleProjectId())
-        .build()
-        .getService();
+    return ClientRegistry.getInstance()
+        .getClient(
+            Storage.class,
+            Provider.GCP,
+            null,
+            credentials.getGcpCredentials(),
+            () ->
+                StorageOptions.newBuilder()
+                    .setCredentials(credentials.getGcpCredentials())
+                    .setProjectId(credentials.getGoogleProjectId())
+                    .build()
+                    .getService());
   }
 
 }
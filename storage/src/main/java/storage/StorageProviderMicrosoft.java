@@ -1,22 +1,58 @@
 package storage;
 
+import com.azure.core.http.rest.Response;
 import com.azure.core.management.profile.AzureProfile;
 import com.azure.core.util.BinaryData;
+import com.azure.core.util.Context;
 import com.azure.resourcemanager.AzureResourceManager;
 import com.azure.resourcemanager.storage.fluent.models.StorageAccountInner;
+import com.azure.storage.blob.BlobClient;
 import com.azure.storage.blob.BlobContainerClient;
-import com.azure.storage.blob.BlobContainerClientBuilder;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.batch.BlobBatch;
+import com.azure.storage.blob.batch.BlobBatchClient;
+import com.azure.storage.blob.batch.BlobBatchClientBuilder;
+import com.azure.storage.blob.models.BlobCopyInfo;
+import com.azure.storage.blob.models.BlobDownloadResponse;
 import com.azure.storage.blob.models.BlobItem;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.CopyStatusType;
+import com.azure.storage.blob.models.DeleteSnapshotsOptionType;
+import com.azure.storage.blob.models.ListBlobsOptions;
+import com.azure.storage.blob.models.ParallelTransferOptions;
+import com.azure.storage.blob.options.BlobDownloadToFileOptions;
+import com.azure.storage.blob.options.BlobUploadFromFileOptions;
 import com.azure.storage.blob.specialized.BlockBlobClient;
 import com.azure.storage.common.StorageSharedKeyCredential;
+import shared.ClientRegistry;
 import shared.Configuration;
 import shared.Credentials;
+import shared.Provider;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class StorageProviderMicrosoft implements StorageProvider {
 
+    private static final Duration COPY_POLL_INTERVAL = Duration.ofSeconds(1);
+    // Azure accepts at most 256 sub-requests in a single batch request
+    private static final int MAX_BATCH_SIZE = 256;
+
     private final Credentials credentials;
     private final Configuration configuration;
 
@@ -30,31 +66,194 @@ public class StorageProviderMicrosoft implements StorageProvider {
     }
 
     @Override
-    public byte[] read(String fileUrl) {
-        FileInfo fileInfo = FileInfo.parse(fileUrl);
+    public VersionedFile readIfChanged(FileInfo fileInfo, String version) throws IOException {
         BlobContainerClient client = getBlobStorageClient(credentials, fileInfo.getBucketInfo().getBucketName());
         BlockBlobClient blobClient = client.getBlobClient(fileInfo.getFileName()).getBlockBlobClient();
-        return blobClient.downloadContent().toBytes();
+        int partSize = configuration.getDownloadPartSize();
+        // the first part also tells the size of the whole blob
+        ByteArrayOutputStream firstPart = new ByteArrayOutputStream();
+        BlobDownloadResponse response;
+        try {
+            response = blobClient.downloadStreamWithResponse(
+                    firstPart, new BlobRange(0, (long) partSize), null,
+                    new BlobRequestConditions().setIfNoneMatch(version), false, null, Context.NONE);
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() == 304) {
+                // the caller already has the current version
+                return null;
+            }
+            if (e.getStatusCode() != 416) {
+                throw e;
+            }
+            // an empty blob cannot satisfy any range
+            return new VersionedFile(new byte[0], null);
+        }
+        String eTag = response.getDeserializedHeaders().getETag();
+        String contentRange = response.getDeserializedHeaders().getContentRange();
+        long size = contentRange != null ? RangedDownload.parseTotalSize(contentRange) : firstPart.size();
+        if (size <= firstPart.size()) {
+            return new VersionedFile(firstPart.toByteArray(), eTag);
+        }
+        byte[] data = new byte[RangedDownload.toArraySize(size)];
+        System.arraycopy(firstPart.toByteArray(), 0, data, 0, firstPart.size());
+        // fetch the remaining parts concurrently, pinned to the version of the first part
+        BlobRequestConditions conditions = new BlobRequestConditions().setIfMatch(eTag);
+        RangedDownload.intoArray(data, firstPart.size(), (offset, length, out) ->
+                blobClient.downloadStreamWithResponse(
+                        out, new BlobRange(offset, length), null, conditions, false, null, Context.NONE),
+                configuration);
+        return new VersionedFile(data, eTag);
+    }
+
+    @Override
+    public FileMetadata stat(FileInfo fileInfo) {
+        BlobContainerClient client = getBlobStorageClient(credentials, fileInfo.getBucketInfo().getBucketName());
+        BlobProperties properties;
+        try {
+            properties = client.getBlobClient(fileInfo.getFileName()).getProperties();
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+        return new FileMetadata(properties.getBlobSize(), properties.getETag(), properties.getLastModified().toInstant());
     }
 
     @Override
-    public void write(byte[] data, String fileUrl) {
-        FileInfo fileInfo = FileInfo.parse(fileUrl);
+    public String write(byte[] data, FileInfo fileInfo) throws IOException {
         BlobContainerClient client = getBlobStorageClient(credentials, fileInfo.getBucketInfo().getBucketName());
         BlockBlobClient blobClient = client.getBlobClient(fileInfo.getFileName()).getBlockBlobClient();
-        blobClient.upload(BinaryData.fromBytes(data), true);
+        if (data.length > configuration.getMultipartThreshold()) {
+            // upload large files in parallel blocks
+            return writeBlocks(blobClient, data);
+        }
+        return blobClient.upload(BinaryData.fromBytes(data), true).getETag();
+    }
+
+    /**
+     * Stage the data as blocks in parallel and commit the block list. Staged blocks only become
+     * visible once they are committed, uncommitted blocks of a failed upload are discarded by Azure.
+     *
+     * @return The ETag of the committed blob.
+     */
+    private String writeBlocks(BlockBlobClient blobClient, byte[] data) throws IOException {
+        int blockSize = configuration.getMultipartPartSize();
+        ParallelTransfer<String> transfer = new ParallelTransfer<>(
+                configuration.getTransferConcurrency(), configuration.getTransferRetries());
+        // long arithmetic, the offset would overflow for arrays close to the maximum size
+        for (long offset = 0; offset < data.length; offset += blockSize) {
+            int blockOffset = (int) offset;
+            int blockLength = (int) Math.min(blockSize, data.length - offset);
+            // all block ids of a blob must have the same length
+            String blockId = Base64.getEncoder().encodeToString(
+                    String.format("%08d", offset / blockSize).getBytes(StandardCharsets.UTF_8));
+            transfer.submit(() -> {
+                blobClient.stageBlock(blockId, new ByteArrayInputStream(data, blockOffset, blockLength), blockLength);
+                return blockId;
+            });
+        }
+        List<String> blockIds = transfer.await();
+        return blobClient.commitBlockList(blockIds, true).getETag();
     }
 
     @Override
-    public boolean delete(String fileUrl) {
-        FileInfo fileInfo = FileInfo.parse(fileUrl);
+    public InputStream openRead(FileInfo fileInfo) {
+        BlobContainerClient client = getBlobStorageClient(credentials, fileInfo.getBucketInfo().getBucketName());
+        return client.getBlobClient(fileInfo.getFileName()).openInputStream();
+    }
+
+    @Override
+    public OutputStream openWrite(FileInfo fileInfo) {
         BlobContainerClient client = getBlobStorageClient(credentials, fileInfo.getBucketInfo().getBucketName());
         BlockBlobClient blobClient = client.getBlobClient(fileInfo.getFileName()).getBlockBlobClient();
-        if (blobClient != null && blobClient.exists()) {
-            blobClient.delete();
-            return true;
+        // blocks are only committed on close, uncommitted blocks of an aborted stream are discarded by Azure
+        return new AbortableOutputStream(blobClient.getBlobOutputStream(true), () -> { });
+    }
+
+    @Override
+    public void download(FileInfo fileInfo, Path target) throws IOException {
+        BlobContainerClient client = getBlobStorageClient(credentials, fileInfo.getBucketInfo().getBucketName());
+        BlobClient blobClient = client.getBlobClient(fileInfo.getFileName());
+        // the SDK downloads the ranges concurrently and writes them to their position in the file
+        com.azure.storage.common.ParallelTransferOptions transferOptions = new com.azure.storage.common.ParallelTransferOptions()
+                .setBlockSizeLong((long) configuration.getDownloadPartSize())
+                .setMaxConcurrency(configuration.getTransferConcurrency());
+        LocalFiles.replace(target, tmpFile -> blobClient.downloadToFileWithResponse(
+                new BlobDownloadToFileOptions(tmpFile.toString()).setParallelTransferOptions(transferOptions),
+                null, Context.NONE));
+    }
+
+    @Override
+    public String upload(Path source, FileInfo fileInfo) {
+        BlobContainerClient client = getBlobStorageClient(credentials, fileInfo.getBucketInfo().getBucketName());
+        BlobClient blobClient = client.getBlobClient(fileInfo.getFileName());
+        // larger files are staged as blocks in parallel, each block is read from the file when it is sent
+        ParallelTransferOptions transferOptions = new ParallelTransferOptions()
+                .setMaxSingleUploadSizeLong(configuration.getMultipartThreshold())
+                .setBlockSizeLong((long) configuration.getMultipartPartSize())
+                .setMaxConcurrency(configuration.getTransferConcurrency());
+        // without request conditions an existing blob is overwritten
+        return blobClient.uploadFromFileWithResponse(
+                new BlobUploadFromFileOptions(source.toString()).setParallelTransferOptions(transferOptions),
+                null, Context.NONE).getValue().getETag();
+    }
+
+    @Override
+    public void copy(FileInfo source, FileInfo target) throws IOException {
+        BlobClient sourceBlob = getBlobStorageClient(credentials, source.getBucketInfo().getBucketName())
+                .getBlobClient(source.getFileName());
+        BlobClient targetBlob = getBlobStorageClient(credentials, target.getBucketInfo().getBucketName())
+                .getBlobClient(target.getFileName());
+        // all containers are in the same storage account, so the copy is authorized by the account key
+        BlobCopyInfo copyInfo = targetBlob.beginCopy(sourceBlob.getBlobUrl(), COPY_POLL_INTERVAL)
+                .waitForCompletion()
+                .getValue();
+        if (copyInfo.getCopyStatus() != CopyStatusType.SUCCESS) {
+            throw new IOException("Copy of " + source.getFileUrl() + " to " + target.getFileUrl()
+                    + " failed: " + copyInfo.getError());
+        }
+    }
+
+    @Override
+    public boolean delete(FileInfo fileInfo) {
+        BlobContainerClient client = getBlobStorageClient(credentials, fileInfo.getBucketInfo().getBucketName());
+        // a single request, which reports whether the blob existed
+        return client.getBlobClient(fileInfo.getFileName()).deleteIfExists();
+    }
+
+    @Override
+    public void deleteAll(BucketInfo bucketInfo, List<String> fileNames) throws IOException {
+        BlobBatchClient batchClient = getBlobBatchClient(credentials);
+        ParallelTransfer<Void> transfer = new ParallelTransfer<>(
+                configuration.getTransferConcurrency(), configuration.getTransferRetries());
+        for (int i = 0; i < fileNames.size(); i += MAX_BATCH_SIZE) {
+            List<String> blobNames = fileNames.subList(i, Math.min(i + MAX_BATCH_SIZE, fileNames.size()));
+            submitDeleteBatch(transfer, batchClient, bucketInfo.getBucketName(), blobNames);
         }
-        return false;
+        transfer.await();
+    }
+
+    /** Delete up to 256 blobs with a single batch request. */
+    private static void submitDeleteBatch(ParallelTransfer<Void> transfer, BlobBatchClient batchClient,
+                                          String containerName, List<String> blobNames) throws IOException {
+        transfer.submit(() -> {
+            BlobBatch batch = batchClient.getBlobBatch();
+            List<Response<Void>> responses = new ArrayList<>();
+            for (String blobName : blobNames) {
+                responses.add(batch.deleteBlob(containerName, blobName, DeleteSnapshotsOptionType.INCLUDE, null));
+            }
+            batchClient.submitBatchWithResponse(batch, false, null, Context.NONE);
+            for (int i = 0; i < responses.size(); i++) {
+                int statusCode = responses.get(i).getStatusCode();
+                // blobs that do not exist are ignored
+                if (statusCode != 202 && statusCode != 404) {
+                    throw new IOException("Failed to delete " + blobNames.get(i) + " from container "
+                            + containerName + ", status code " + statusCode);
+                }
+            }
+            return null;
+        });
     }
 
     @Override
@@ -65,23 +264,47 @@ public class StorageProviderMicrosoft implements StorageProvider {
     }
 
     @Override
-    public String deleteBucket(String bucketName, String region) {
+    public String deleteBucket(String bucketName, String region) throws IOException {
         BlobContainerClient client = getBlobStorageClient(credentials, bucketName);
-        // delete all objects in the bucket
+        BlobBatchClient batchClient = getBlobBatchClient(credentials);
+        // delete all objects in the bucket, batches are deleted while the next page is listed
+        ParallelTransfer<Void> transfer = new ParallelTransfer<>(
+                configuration.getTransferConcurrency(), configuration.getTransferRetries());
+        List<String> batch = new ArrayList<>();
         for(BlobItem blob: client.listBlobs()) {
-            client.getBlobClient(blob.getName()).delete();
+            batch.add(blob.getName());
+            if (batch.size() == MAX_BATCH_SIZE) {
+                submitDeleteBatch(transfer, batchClient, bucketName, batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            submitDeleteBatch(transfer, batchClient, bucketName, batch);
         }
+        transfer.await();
         // delete the bucket itself
         client.delete();
         return bucketName;
     }
 
     @Override
-    public String getRegion(String bucketUrl) {
-        AzureResourceManager manager = AzureResourceManager.authenticate(
-                credentials.getAzureCredentials().getStorageClientSecretCredentials(),
-                new AzureProfile(configuration.getDefaultAzureEnvironment())
-        ).withSubscription(credentials.getAzureCredentials().getStorageSubscriptionKey());
+    public String getRegion(BucketInfo bucketInfo) {
+        if (bucketInfo.getRegion() != null) {
+            return bucketInfo.getRegion();
+        }
+        // all containers of a storage account share the location of the account
+        String accountName = credentials.getAzureCredentials().getStorageAccountName();
+        String region = RegionCache.getInstance().getRegion(
+                Provider.AZURE,
+                accountName,
+                configuration.getStorageAccountLocationTtl(),
+                this::queryRegion);
+        bucketInfo.setRegion(region);
+        return region;
+    }
+
+    private String queryRegion() {
+        AzureResourceManager manager = getResourceManager(credentials);
         StorageAccountInner storageAccount = manager.storageAccounts().manager().serviceClient().getStorageAccounts().list().stream()
                 .filter(storage -> credentials.getAzureCredentials().getStorageAccountName().equals(storage.name()))
                 .findAny()
@@ -93,22 +316,62 @@ public class StorageProviderMicrosoft implements StorageProvider {
     }
 
     @Override
-    public List<String> listFiles(String bucketUrl) {
-        BucketInfo bucketInfo = BucketInfo.parse(bucketUrl);
+    public Stream<String> listFiles(BucketInfo bucketInfo, String prefix) {
         BlobContainerClient client = getBlobStorageClient(credentials, bucketInfo.getBucketName());
-        return client.listBlobs().stream().map(BlobItem::getName).collect(Collectors.toList());
+        ListBlobsOptions options = new ListBlobsOptions().setPrefix(prefix);
+        // the paged iterable requests the next page once the previous one has been consumed
+        return PagedListing.stream(
+                client.listBlobs(options, null).iterableByPage().iterator(),
+                page -> page.getValue().stream().map(BlobItem::getName).collect(Collectors.toList()),
+                configuration.isPrefetchListPages());
+    }
+
+    /** Get the shared Azure Resource Manager of the storage subscription */
+    private AzureResourceManager getResourceManager(Credentials credentials) {
+        return ClientRegistry.getInstance().getClient(
+                AzureResourceManager.class,
+                Provider.AZURE,
+                null,
+                credentials.getAzureCredentials(),
+                () -> AzureResourceManager.authenticate(
+                        credentials.getAzureCredentials().getStorageClientSecretCredentials(),
+                        new AzureProfile(configuration.getDefaultAzureEnvironment())
+                ).withSubscription(credentials.getAzureCredentials().getStorageSubscriptionKey()));
     }
 
-    /** Create Google Cloud Storage client */
+    /** Get a container client backed by the shared Azure Blob Storage client */
     private BlobContainerClient getBlobStorageClient(Credentials credentials, String bucketName) {
-        StorageSharedKeyCredential credential = new StorageSharedKeyCredential(
-                credentials.getAzureCredentials().getStorageAccountName(),
-                credentials.getAzureCredentials().getStorageApiKey());
-
-        return new BlobContainerClientBuilder()
-                .endpoint(String.format("https://%s.blob.core.windows.net", credentials.getAzureCredentials().getStorageAccountName()))
-                .credential(credential)
-                .containerName(bucketName)
-                .buildClient();
+        return getBlobServiceClient(credentials).getBlobContainerClient(bucketName);
+    }
+
+    /** Get the shared Azure Blob Batch client of the storage account */
+    private BlobBatchClient getBlobBatchClient(Credentials credentials) {
+        // resolved before, the factory must not request another client from the registry
+        BlobServiceClient serviceClient = getBlobServiceClient(credentials);
+        return ClientRegistry.getInstance().getClient(
+                BlobBatchClient.class,
+                Provider.AZURE,
+                null,
+                credentials.getAzureCredentials(),
+                () -> new BlobBatchClientBuilder(serviceClient).buildClient());
+    }
+
+    /** Get the shared Azure Blob Storage client of the storage account */
+    private BlobServiceClient getBlobServiceClient(Credentials credentials) {
+        return ClientRegistry.getInstance().getClient(
+                BlobServiceClient.class,
+                Provider.AZURE,
+                null,
+                credentials.getAzureCredentials(),
+                () -> {
+                    StorageSharedKeyCredential credential = new StorageSharedKeyCredential(
+                            credentials.getAzureCredentials().getStorageAccountName(),
+                            credentials.getAzureCredentials().getStorageApiKey());
+
+                    return new BlobServiceClientBuilder()
+                            .endpoint(String.format("https://%s.blob.core.windows.net", credentials.getAzureCredentials().getStorageAccountName()))
+                            .credential(credential)
+                            .buildClient();
+                });
     }
 }
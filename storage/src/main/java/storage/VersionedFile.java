@@ -0,0 +1,13 @@
+package storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/** The contents of a file together with the version they were read from. */
+@AllArgsConstructor
+@Getter
+public class VersionedFile {
+  private final byte[] data;
+  // the ETag for AWS and Azure, the generation for GCP. Null, if the version is not known.
+  private final String version;
+}
@@ -3,6 +3,7 @@ package synthesis;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.net.URI;
+import shared.ClientRegistry;
 import shared.Configuration;
 import shared.Credentials;
 import shared.Provider;
@@ -20,14 +21,12 @@ public class SpeechSynthesisAmazon implements SpeechSynthesis {
   private final Storage storage;
   private final Runtime runtime;
   private final Configuration configuration;
-  private String serviceRegion;
+  // the region configured by the caller, null if the region is selected per request
+  private final String serviceRegion;
 
   public SpeechSynthesisAmazon(
       Credentials credentials, Storage storage, Configuration configuration, Runtime runtime) {
-    this.credentials = credentials;
-    this.storage = storage;
-    this.configuration = configuration;
-    this.runtime = runtime;
+    this(credentials, storage, configuration, runtime, null);
   }
 
   public SpeechSynthesisAmazon(
@@ -36,7 +35,10 @@ public class SpeechSynthesisAmazon implements SpeechSynthesis {
       Configuration configuration,
       Runtime runtime,
       String serviceRegion) {
-    this(credentials, storage, configuration, runtime);
+    this.credentials = credentials;
+    this.storage = storage;
+    this.configuration = configuration;
+    this.runtime = runtime;
     this.serviceRegion = serviceRegion;
   }
 
@@ -44,40 +46,37 @@ public class SpeechSynthesisAmazon implements SpeechSynthesis {
   public SpeechSynthesisResponse synthesizeSpeech(
       String inputFile, String language, TextType textType, Gender gender, AudioFormat audioFormat)
       throws Exception {
-    try {
-      // select region where to run the service
-      if (serviceRegion != null && !serviceRegion.isEmpty()) {
-        serviceRegion = selectRegionSync();
-      }
-      // read the input text
-      String text = new String(storage.read(inputFile));
-      // get voice for language and gender
-      VoiceAmazon voice = getVoice(language, Engine.STANDARD, gender.name().toLowerCase());
-      // create request
-      SynthesizeSpeechRequest synthesizeSpeechRequest =
-          SynthesizeSpeechRequest.builder()
-              .text(text)
-              .voiceId(voice.getId())
-              .textType(getTextType(textType))
-              .outputFormat(getOutputFormat(audioFormat))
-              .engine(Engine.STANDARD)
-              .sampleRate(Integer.toString(16000))
-              .build();
-      // invoke service
-      long startSynthesis = System.currentTimeMillis();
-      PollyClient pollyClient = getPollyClient(serviceRegion);
-      ResponseInputStream<SynthesizeSpeechResponse> in =
-          pollyClient.synthesizeSpeech(synthesizeSpeechRequest);
-      byte[] audio = in.readAllBytes();
-      long endSynthesis = System.currentTimeMillis();
-      return SpeechSynthesisResponse.builder()
-          .provider(Provider.AWS)
-          .audio(audio)
-          .synthesisTime(endSynthesis - startSynthesis)
-          .build();
-    } finally {
-      serviceRegion = null;
+    // select region where to run the service
+    String region =
+        serviceRegion != null && !serviceRegion.isEmpty() ? serviceRegion : selectRegionSync();
+    // read the input text
+    String text = new String(storage.read(inputFile));
+    // get voice for language and gender
+    VoiceAmazon voice = getVoice(language, Engine.STANDARD, gender.name().toLowerCase());
+    // create request
+    SynthesizeSpeechRequest synthesizeSpeechRequest =
+        SynthesizeSpeechRequest.builder()
+            .text(text)
+            .voiceId(voice.getId())
+            .textType(getTextType(textType))
+            .outputFormat(getOutputFormat(audioFormat))
+            .engine(Engine.STANDARD)
+            .sampleRate(Integer.toString(16000))
+            .build();
+    // invoke service
+    long startSynthesis = System.currentTimeMillis();
+    PollyClient pollyClient = getPollyClient(region);
+    byte[] audio;
+    try (ResponseInputStream<SynthesizeSpeechResponse> in =
+        pollyClient.synthesizeSpeech(synthesizeSpeechRequest)) {
+      audio = in.readAllBytes();
     }
+    long endSynthesis = System.currentTimeMillis();
+    return SpeechSynthesisResponse.builder()
+        .provider(Provider.AWS)
+        .audio(audio)
+        .synthesisTime(endSynthesis - startSynthesis)
+        .build();
   }
 
   private VoiceAmazon getVoice(String languageCode, Engine engine, String gender)
@@ -134,11 +133,18 @@ public class SpeechSynthesisAmazon implements SpeechSynthesis {
   }
 
   /** Create amazon polly client Java SDK V2 */
-  private PollyClient getPollyClient(String region) throws IOException {
-    return PollyClient.builder()
-        .region(Region.of(region))
-        .endpointOverride(URI.create("https://polly." + region + ".amazonaws.com/"))
-        .credentialsProvider(credentials.getAwsCredentials())
-        .build();
+  private PollyClient getPollyClient(String region) {
+    return ClientRegistry.getInstance()
+        .getClient(
+            PollyClient.class,
+            Provider.AWS,
+            region,
+            credentials.getAwsCredentials(),
+            () ->
+                PollyClient.builder()
+                    .region(Region.of(region))
+                    .endpointOverride(URI.create("https://polly." + region + ".amazonaws.com/"))
+                    .credentialsProvider(credentials.getAwsCredentials())
+                    .build());
   }
 }
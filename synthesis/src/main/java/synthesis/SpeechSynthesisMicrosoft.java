@@ -20,14 +20,12 @@ public class SpeechSynthesisMicrosoft implements SpeechSynthesis {
     private final Storage storage;
     private final Runtime runtime;
     private final Configuration configuration;
-    private String serviceRegion;
+    // the region configured by the caller, null if the region is selected per request
+    private final String serviceRegion;
 
     public SpeechSynthesisMicrosoft(
             Credentials credentials, Storage storage, Configuration configuration, Runtime runtime) {
-        this.credentials = credentials;
-        this.storage = storage;
-        this.configuration = configuration;
-        this.runtime = runtime;
+        this(credentials, storage, configuration, runtime, null);
     }
 
     public SpeechSynthesisMicrosoft(
@@ -36,7 +34,10 @@ public class SpeechSynthesisMicrosoft implements SpeechSynthesis {
             Configuration configuration,
             Runtime runtime,
             String serviceRegion) {
-        this(credentials, storage, configuration, runtime);
+        this.credentials = credentials;
+        this.storage = storage;
+        this.configuration = configuration;
+        this.runtime = runtime;
         this.serviceRegion = serviceRegion;
     }
 
@@ -44,51 +45,47 @@ public class SpeechSynthesisMicrosoft implements SpeechSynthesis {
     public SpeechSynthesisResponse synthesizeSpeech(
             String inputFile, String language, TextType textType, Gender gender, AudioFormat audioFormat)
             throws Exception {
-        try {
-            // select region where to run the service
-            selectRegion();
-            // read the input text
-            String text = new String(storage.read(inputFile));
-            // get voice for language and gender
-            VoiceAzure voice = getVoice(language, gender.name().toLowerCase());
-            // create request
-
-            try(SpeechConfig config = SpeechConfig.fromSubscription(credentials.getAzureCredentials().getSpeechSynthesisApiKey(), serviceRegion)) {
-                config.setSpeechSynthesisOutputFormat(getOutputFormat(audioFormat));
-                config.setSpeechSynthesisVoiceName(voice.getShortName());
-
-                SpeechSynthesizer speechSynthesizer = new SpeechSynthesizer(config, null);
-
-                SpeechSynthesisResult result = null;
-                long startSynthesis = 0, endSynthesis = 0;
-                switch(textType) {
-                    case SSML:
-                        startSynthesis = System.currentTimeMillis();
-                        result = speechSynthesizer.SpeakSsml(text);
-                        endSynthesis = System.currentTimeMillis();
-                        break;
-                    case PLAIN_TEXT:
-                        startSynthesis = System.currentTimeMillis();
-                        result = speechSynthesizer.SpeakText(text);
-                        endSynthesis = System.currentTimeMillis();
-                        break;
-                }
-
-                if (result.getReason() == ResultReason.SynthesizingAudioCompleted) {
-                    return SpeechSynthesisResponse.builder()
-                            .provider(Provider.AZURE)
-                            .audio(result.getAudioData())
-                            .synthesisTime(endSynthesis - startSynthesis)
-                            .build();
-                } else if (result.getReason() == ResultReason.Canceled) {
-                    SpeechSynthesisCancellationDetails cancellation = SpeechSynthesisCancellationDetails.fromResult(result);
-                    throw new RuntimeException(String.format("Speech Recognition Request was canceled. Reason: %s. Error Code: %d. Details: %s",
-                            cancellation.getReason().getValue(), cancellation.getErrorCode().getValue(), cancellation.getErrorDetails()));
-                }
-                return null;
+        // select region where to run the service
+        String region = selectRegion();
+        // read the input text
+        String text = new String(storage.read(inputFile));
+        // get voice for language and gender
+        VoiceAzure voice = getVoice(language, gender.name().toLowerCase());
+        // create request
+
+        try(SpeechConfig config = SpeechConfig.fromSubscription(credentials.getAzureCredentials().getSpeechSynthesisApiKey(), region)) {
+            config.setSpeechSynthesisOutputFormat(getOutputFormat(audioFormat));
+            config.setSpeechSynthesisVoiceName(voice.getShortName());
+
+            SpeechSynthesizer speechSynthesizer = new SpeechSynthesizer(config, null);
+
+            SpeechSynthesisResult result = null;
+            long startSynthesis = 0, endSynthesis = 0;
+            switch(textType) {
+                case SSML:
+                    startSynthesis = System.currentTimeMillis();
+                    result = speechSynthesizer.SpeakSsml(text);
+                    endSynthesis = System.currentTimeMillis();
+                    break;
+                case PLAIN_TEXT:
+                    startSynthesis = System.currentTimeMillis();
+                    result = speechSynthesizer.SpeakText(text);
+                    endSynthesis = System.currentTimeMillis();
+                    break;
+            }
+
+            if (result.getReason() == ResultReason.SynthesizingAudioCompleted) {
+                return SpeechSynthesisResponse.builder()
+                        .provider(Provider.AZURE)
+                        .audio(result.getAudioData())
+                        .synthesisTime(endSynthesis - startSynthesis)
+                        .build();
+            } else if (result.getReason() == ResultReason.Canceled) {
+                SpeechSynthesisCancellationDetails cancellation = SpeechSynthesisCancellationDetails.fromResult(result);
+                throw new RuntimeException(String.format("Speech Recognition Request was canceled. Reason: %s. Error Code: %d. Details: %s",
+                        cancellation.getReason().getValue(), cancellation.getErrorCode().getValue(), cancellation.getErrorDetails()));
             }
-        } finally {
-            serviceRegion = null;
+            return null;
         }
     }
 
@@ -130,18 +127,17 @@ public class SpeechSynthesisMicrosoft implements SpeechSynthesis {
         return Locale.forLanguageTag(locale).getLanguage();
     }
 
-    private void selectRegion() {
+    private String selectRegion() {
         if (serviceRegion != null && !serviceRegion.isEmpty()) {
-            return;
+            return serviceRegion;
         }
         Provider functionProvider = runtime.getFunctionProvider();
         String functionRegion = runtime.getFunctionRegion();
         if (Provider.AZURE.equals(functionProvider) && functionRegion != null) {
             // run in function region
-            serviceRegion = functionRegion;
-        } else {
-            // run in default region
-            serviceRegion = configuration.getDefaultRegionAzure();
+            return functionRegion;
         }
+        // run in default region
+        return configuration.getDefaultRegionAzure();
     }
 }
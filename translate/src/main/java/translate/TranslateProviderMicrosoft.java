@@ -4,13 +4,13 @@ import com.azure.ai.translation.text.TextTranslationClient;
 import com.azure.ai.translation.text.TextTranslationClientBuilder;
 import com.azure.ai.translation.text.models.InputTextItem;
 import com.azure.ai.translation.text.models.TranslatedTextItem;
+import shared.ClientRegistry;
 import shared.Configuration;
 import shared.Credentials;
 import shared.Provider;
 import shared.Runtime;
 import storage.Storage;
 
-import java.io.IOException;
 import java.util.List;
 
 public class TranslateProviderMicrosoft implements TranslateProvider {
@@ -21,14 +21,12 @@ public class TranslateProviderMicrosoft implements TranslateProvider {
     private final Storage storage;
     private final Runtime runtime;
     private final Configuration configuration;
-    private String serviceRegion;
+    // the region configured by the caller, null if the region is selected per request
+    private final String serviceRegion;
 
     public TranslateProviderMicrosoft(
             Credentials credentials, Runtime runtime, Storage storage, Configuration configuration) {
-        this.credentials = credentials;
-        this.storage = storage;
-        this.runtime = runtime;
-        this.configuration = configuration;
+        this(credentials, runtime, storage, configuration, null);
     }
 
     public TranslateProviderMicrosoft(
@@ -37,7 +35,10 @@ public class TranslateProviderMicrosoft implements TranslateProvider {
             Storage storage,
             Configuration configuration,
             String serviceRegion) {
-        this(credentials, runtime, storage, configuration);
+        this.credentials = credentials;
+        this.storage = storage;
+        this.runtime = runtime;
+        this.configuration = configuration;
         this.serviceRegion = serviceRegion;
     }
 
@@ -46,35 +47,39 @@ public class TranslateProviderMicrosoft implements TranslateProvider {
         // read the input text
         String text = new String(storage.read(inputFile));
         // select region
-        selectRegion();
+        String region = selectRegion();
         // translate text
-        TextTranslationClient translateClient = getTranslateClient();
+        TextTranslationClient translateClient = getTranslateClient(region);
         List<TranslatedTextItem> translations = translateClient.translate(List.of(language), List.of(new InputTextItem(text)));
         String translatedText = translations.get(0).getTranslations().get(0).getText();
         // return response
         return TranslateResponse.builder().text(translatedText).build();
     }
 
-    public TextTranslationClient getTranslateClient() throws IOException {
-        TextTranslationClientBuilder builder = new TextTranslationClientBuilder()
-                .region(serviceRegion)
-                .endpoint(ENDPOINT)
-                .credential(credentials.getAzureCredentials().getTranslationCredentials());
-        return builder.buildClient();
+    public TextTranslationClient getTranslateClient(String region) {
+        return ClientRegistry.getInstance().getClient(
+                TextTranslationClient.class,
+                Provider.AZURE,
+                region,
+                credentials.getAzureCredentials(),
+                () -> new TextTranslationClientBuilder()
+                        .region(region)
+                        .endpoint(ENDPOINT)
+                        .credential(credentials.getAzureCredentials().getTranslationCredentials())
+                        .buildClient());
     }
 
-    private void selectRegion() {
+    private String selectRegion() {
         if (serviceRegion != null && !serviceRegion.isEmpty()) {
-            return;
+            return serviceRegion;
         }
         Provider functionProvider = runtime.getFunctionProvider();
         String functionRegion = runtime.getFunctionRegion();
         if (Provider.AZURE.equals(functionProvider) && functionRegion != null) {
             // run in function region
-            serviceRegion = functionRegion;
-        } else {
-            // run in default region
-            serviceRegion = configuration.getDefaultRegionAzure();
+            return functionRegion;
         }
+        // run in default region
+        return configuration.getDefaultRegionAzure();
     }
 }